@@ -0,0 +1,42 @@
+package pLaunchControl;
+
+import processing.core.PApplet;
+
+/**
+ * A sketch that is never started, holding the variables and event methods the benchmarks bind to.
+ */
+public class BenchmarkSketch extends PApplet {
+
+    public float knobValue;
+    public float sliderValue;
+    public boolean padValue;
+    public int events;
+
+    public void LaunchControlChanged() {
+        events++;
+    }
+
+    public void LaunchControlKnobChanged(KNOBS knob) {
+        events++;
+    }
+
+    public void LaunchControlSliderChanged(SLIDERS slider) {
+        events++;
+    }
+
+    public void LaunchControlPadChanged(PADS pad) {
+        events++;
+    }
+
+    /**
+     * Creates a Launch Control XL connected to a {@link LoopbackDevice}, with a knob, a slider
+     * and a pad bound to the variables of this sketch.
+     */
+    LaunchControlXL connect(LoopbackDevice loopback) throws Exception {
+        LaunchControlXL controller = new LaunchControlXL(this, loopback);
+        controller.getKnob(KNOBS.KNOB_01).variable("knobValue");
+        controller.getSlider(SLIDERS.SLIDER_1).variable("sliderValue");
+        controller.getPad(PADS.PAD_1).variable("padValue");
+        return controller;
+    }
+}
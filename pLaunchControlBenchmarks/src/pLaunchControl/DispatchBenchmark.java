@@ -0,0 +1,57 @@
+package pLaunchControl;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares triggering the events of the sketch through {@link Method#invoke}, as done before the
+ * listener interfaces, with the listeners created by {@link SketchEvents}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    private LaunchControlXL controller;
+    private BenchmarkSketch sketch;
+    private Method knobChanged;
+    private Method padChanged;
+
+    @Setup
+    public void setup() throws Exception {
+        sketch = new BenchmarkSketch();
+        controller = sketch.connect(new LoopbackDevice(LaunchControlXL.DEVICE_NAME_SUFFIX));
+        knobChanged = sketch.getClass().getMethod(SketchEvents.KNOB_CHANGED, KNOBS.class);
+        padChanged = sketch.getClass().getMethod(SketchEvents.PAD_CHANGED, PADS.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        controller.dispose();
+    }
+
+    @Benchmark
+    public void reflectiveKnobChanged() throws Exception {
+        knobChanged.invoke(sketch, KNOBS.KNOB_01);
+    }
+
+    @Benchmark
+    public void reflectivePadChanged() throws Exception {
+        padChanged.invoke(sketch, PADS.PAD_1);
+    }
+
+    @Benchmark
+    public void knobChanged() {
+        controller.knobChanged(KNOBS.KNOB_01);
+    }
+
+    @Benchmark
+    public void padChanged() {
+        controller.padChanged(PADS.PAD_1);
+    }
+}
@@ -0,0 +1,81 @@
+package pLaunchControl;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the reflective lookup previously done on every change of a {@link Knob}
+ * with the {@link FieldBinding} resolved once in {@link Knob#variable(String)}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldBindingBenchmark {
+
+    public static class Sketch {
+        float knobValue;
+        boolean padValue;
+        Particle[] particles = { new Particle() };
+    }
+
+    public static class Particle {
+        int size;
+    }
+
+    private Sketch sketch;
+    private Knob knob;
+    private Pad pad;
+    private Knob nestedKnob;
+    private int position;
+
+    @Setup
+    public void setup() {
+        sketch = new Sketch();
+        knob = new Knob(0, sketch).range(0, 1).variable("knobValue");
+        pad = new Pad(0, sketch).variable("padValue");
+        nestedKnob = new Knob(1, sketch).range(0, 100).variable("particles[0].size");
+    }
+
+    /**
+     * The original implementation: look up the field and make it accessible on every change.
+     */
+    @Benchmark
+    public void reflectiveSetFloat() throws Exception {
+        position = (position + 1) & 127;
+        Field field = sketch.getClass().getDeclaredField("knobValue");
+        field.setAccessible(true);
+        field.setFloat(sketch, position / 127f);
+    }
+
+    @Benchmark
+    public void reflectiveSetBoolean() throws Exception {
+        Field field = sketch.getClass().getDeclaredField("padValue");
+        field.setAccessible(true);
+        field.setBoolean(sketch, !sketch.padValue);
+    }
+
+    @Benchmark
+    public void knobPosition() {
+        position = (position + 1) & 127;
+        knob.position(position);
+    }
+
+    /**
+     * A variable reached through an array and a field, and rounded to an int, written by a single method handle.
+     */
+    @Benchmark
+    public void nestedKnobPosition() {
+        position = (position + 1) & 127;
+        nestedKnob.position(position);
+    }
+
+    @Benchmark
+    public void padValue() {
+        pad.value(!pad.value());
+    }
+}
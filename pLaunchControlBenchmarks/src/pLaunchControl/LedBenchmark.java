@@ -0,0 +1,66 @@
+package pLaunchControl;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.sound.midi.Receiver;
+import javax.sound.midi.SysexMessage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the output path, turning a pad light on or off. The original implementation,
+ * sendLedOnOff, allocated a new System Exclusive message and asked the device for its receiver
+ * on every change; pad lights are now buffered in the {@link LedBuffer} and sent with a reused message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LedBenchmark {
+
+    private LaunchControlXL controller;
+    private Receiver output;
+    private boolean on;
+
+    @Setup
+    public void setup() throws Exception {
+        controller = new BenchmarkSketch().connect(new LoopbackDevice(LaunchControlXL.DEVICE_NAME_SUFFIX));
+        output = controller.receiver.output();
+    }
+
+    @TearDown
+    public void tearDown() {
+        controller.dispose();
+    }
+
+    /**
+     * The original implementation of sendLedOnOff.
+     */
+    @Benchmark
+    public void sendLedOnOff() throws Exception {
+        on = !on;
+        byte color = on ? LedConstants.RED_FULL : LedConstants.OFF;
+        byte[] ledOn = new byte[]{(byte) 0xF0, 0x00, 0x20, 0x29, 0x02, 0x11, 0x78, 0x08, 24, color, (byte) 0xF7};
+        SysexMessage ledOnMsg = new SysexMessage(ledOn, ledOn.length);
+        controller.deviceOut.getReceiver().send(ledOnMsg, -1);
+    }
+
+    @Benchmark
+    public void setLed() {
+        on = !on;
+        controller.receiver.setLed(PADS.PAD_1, on);
+        controller.receiver.leds.flush(output);
+    }
+
+    /**
+     * Changing every pad light, sent in a single message by the Launch Control XL.
+     */
+    @Benchmark
+    public void setAllLeds() {
+        on = !on;
+        for (PADS pad : ControlLayout.PAD_VALUES)
+            controller.receiver.setLed(pad, on);
+        controller.receiver.leds.flush(output);
+    }
+}
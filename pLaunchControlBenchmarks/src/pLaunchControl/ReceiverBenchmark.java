@@ -0,0 +1,82 @@
+package pLaunchControl;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.sound.midi.ShortMessage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the input path, from a MIDI message delivered by the device to the variables and events
+ * of the sketch: {@link LaunchControlDeviceReceiver#send} decoding the message, updating the control
+ * and its field binding, and triggering the sketch events. Pushing a pad also sends its light to the device.
+ * <p>Knobs and sliders are moved {@value #MESSAGES_PER_FRAME} times per frame: {@link MidiController#pre()} is
+ * called after every {@value #MESSAGES_PER_FRAME} messages, in both modes, so that coalesced changes are
+ * dispatched and measured too, and both modes are measured for the same work.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReceiverBenchmark {
+
+    static final int MESSAGES_PER_FRAME = 16;
+
+    @Param({"false", "true"})
+    public boolean coalesce;
+
+    private LoopbackDevice loopback;
+    private LaunchControlXL controller;
+    private final ShortMessage[] knobMessages = new ShortMessage[128];
+    private final ShortMessage[] sliderMessages = new ShortMessage[128];
+    private ShortMessage padMessage;
+    private int position;
+
+    @Setup
+    public void setup() throws Exception {
+        loopback = new LoopbackDevice(LaunchControlXL.DEVICE_NAME_SUFFIX);
+        controller = new BenchmarkSketch().connect(loopback);
+        controller.coalesceEvents(coalesce);
+        for (int i = 0; i < 128; i++) {
+            knobMessages[i] = new ShortMessage(0xB0, 13, i);
+            sliderMessages[i] = new ShortMessage(0xB0, 77, i);
+        }
+        padMessage = new ShortMessage(0x90, 41, 127);
+    }
+
+    @TearDown
+    public void tearDown() {
+        controller.dispose();
+    }
+
+    @Benchmark
+    public void knob() {
+        position = (position + 1) & 127;
+        loopback.send(knobMessages[position]);
+        if (position % MESSAGES_PER_FRAME == 0)
+            controller.pre();
+    }
+
+    @Benchmark
+    public void slider() {
+        position = (position + 1) & 127;
+        loopback.send(sliderMessages[position]);
+        if (position % MESSAGES_PER_FRAME == 0)
+            controller.pre();
+    }
+
+    @Benchmark
+    public void pad() {
+        loopback.send(padMessage);
+    }
+
+    /**
+     * Messages not mapped to any control, which are decoded and ignored.
+     */
+    @Benchmark
+    public void unmapped() {
+        position = (position + 1) & 127;
+        loopback.send(knobMessages[position].getStatus(), 1, position);
+    }
+}
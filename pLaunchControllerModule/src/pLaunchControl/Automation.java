@@ -0,0 +1,276 @@
+package pLaunchControl;
+
+import processing.core.PApplet;
+
+import java.util.Arrays;
+
+/**
+ * <p>Records the movements of knobs and sliders into automation lanes, and plays them back in a loop.
+ * Get the automation of a controller with {@link MidiController#automation()}.</p>
+ * <p>While the record pad is held, or between {@link #startRecording()} and {@link #stopRecording()},
+ * every change of a knob or slider is stored as a keyframe of its lane. When recording stops, the lanes
+ * recorded in this take replace the previous lanes of the same controls, and loop over the duration of the take.
+ * Controls not moved during the take keep their lanes.</p>
+ * <p>Lanes are played back once per frame, before `draw()`: the value of each control is interpolated between
+ * the keyframes surrounding the current time, found by binary search, and written like a value received from the
+ * controller, updating the attached variables and triggering the events of the sketch. A lane does not play while
+ * it is being recorded again.</p>
+ */
+public final class Automation {
+
+    private final LaunchControlDeviceReceiver receiver;
+    private final ControlState state;
+    private final PApplet parent;
+    private final long origin = System.nanoTime();
+
+    /**
+     * The lane of each control, indexed like {@link ControlState}, or null. Replaced when a take is recorded.
+     */
+    private volatile Lane[] lanes;
+    private volatile PADS recordPad;
+    private volatile boolean playing = true;
+    private volatile SYNC sync = SYNC.FRAMES;
+
+    // the take being recorded, guarded by this object
+    private volatile boolean recording;
+    private final Lane[] take;
+    private final double[] takeValues;
+    private double takeStart;
+
+    Automation(LaunchControlDeviceReceiver receiver, ControlState state, PApplet parent) {
+        this.receiver = receiver;
+        this.state = state;
+        this.parent = parent;
+        int controls = state.knobCount() + state.sliderCount();
+        lanes = new Lane[controls];
+        take = new Lane[controls];
+        takeValues = new double[controls];
+    }
+
+    /**
+     * Sets the pad which records while it is held. The pad then no longer changes its value, nor triggers events.
+     * @param pad The pad, or null to record only with {@link #startRecording()}.
+     * @return The Automation itself.
+     */
+    public Automation recordPad(PADS pad) {
+        PADS previous = recordPad;
+        recordPad = pad;
+        if (previous != null && previous != pad)
+            receiver.setLed(previous, false);
+        return this;
+    }
+
+    /**
+     * Sets the clock of the lanes. Changing the clock removes all lanes.
+     * @return The Automation itself.
+     */
+    public synchronized Automation sync(SYNC sync) {
+        if (sync != this.sync) {
+            this.sync = sync;
+            clear();
+        }
+        return this;
+    }
+
+    /**
+     * Starts recording a take. Knobs and sliders moved until {@link #stopRecording()} get a new lane.
+     */
+    public synchronized void startRecording() {
+        if (recording)
+            return;
+        Arrays.fill(take, null);
+        System.arraycopy(state.fine, 0, takeValues, 0, takeValues.length);
+        takeStart = now();
+        recording = true;
+    }
+
+    /**
+     * Stops recording, and starts playing the lanes of the take in a loop, over the duration of the take.
+     */
+    public synchronized void stopRecording() {
+        if (!recording)
+            return;
+        recording = false;
+        double length = now() - takeStart;
+        if (length <= 0)
+            return;
+        Lane[] result = lanes.clone();
+        for (int i = 0; i < take.length; i++) {
+            if (take[i] != null) {
+                take[i].loop(takeStart, length);
+                result[i] = take[i];
+            }
+        }
+        lanes = result;
+    }
+
+    public boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * Pauses or resumes playing the lanes back. Lanes play by default.
+     */
+    public void play(boolean play) {
+        playing = play;
+    }
+
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    /**
+     * Removes all lanes.
+     */
+    public synchronized void clear() {
+        lanes = new Lane[lanes.length];
+    }
+
+    public void clear(KNOBS knob) {
+        clear(knob.code());
+    }
+
+    public void clear(SLIDERS slider) {
+        clear(state.knobCount() + slider.code());
+    }
+
+    private synchronized void clear(int control) {
+        Lane[] result = lanes.clone();
+        result[control] = null;
+        lanes = result;
+    }
+
+    /**
+     * @return True if the knob has a lane to play back.
+     */
+    public boolean hasLane(KNOBS knob) {
+        return lanes[knob.code()] != null;
+    }
+
+    public boolean hasLane(SLIDERS slider) {
+        return lanes[state.knobCount() + slider.code()] != null;
+    }
+
+    private double now() {
+        if (sync == SYNC.FRAMES)
+            return parent.frameCount;
+        return (System.nanoTime() - origin) / 1e9;
+    }
+
+    // ****** CALLED BY THE RECEIVER ****** //
+
+    /**
+     * @return True if the pad records, in which case its messages are handled by {@link #recordPadPressed(boolean)}.
+     */
+    boolean isRecordPad(PADS pad) {
+        return pad == recordPad;
+    }
+
+    void recordPadPressed(boolean pressed) {
+        if (pressed)
+            startRecording();
+        else
+            stopRecording();
+        PADS pad = recordPad;
+        if (pad != null)
+            receiver.setLed(pad, pressed);
+    }
+
+    /**
+     * Adds the current value of a control moved by the controller to the take being recorded.
+     */
+    void record(int control) {
+        if (!recording)
+            return;
+        synchronized (this) {
+            if (!recording)
+                return;
+            double time = now() - takeStart;
+            double value = state.fine[control];
+            Lane lane = take[control];
+            if (lane == null) {
+                lane = take[control] = new Lane();
+                // the value is held from the start of the take until the control is moved
+                lane.add(0, takeValues[control]);
+                lane.add(time, takeValues[control]);
+            }
+            lane.add(time, value);
+        }
+    }
+
+    /**
+     * Writes the value of every lane at the current time. Called once per frame by the animation thread.
+     */
+    void advance() {
+        if (!playing)
+            return;
+        Lane[] lanes = this.lanes;
+        boolean recording = this.recording;
+        double now = now();
+        for (int control = 0; control < lanes.length; control++) {
+            Lane lane = lanes[control];
+            if (lane == null || recording && take[control] != null)
+                continue;
+            double value = lane.evaluate(now);
+            if (value != state.fine[control])
+                receiver.automate(control, value);
+        }
+    }
+
+    /**
+     * The keyframes of a control: times relative to the start of the take, and normalized values,
+     * in primitive arrays sorted by time.
+     */
+    private static final class Lane {
+
+        private double[] times = new double[64];
+        private double[] values = new double[64];
+        private int size;
+        private double start;
+        private double length;
+
+        void add(double time, double value) {
+            if (size > 0 && values[size - 1] == value && size > 1 && values[size - 2] == value) {
+                // extend a flat segment instead of adding a keyframe
+                times[size - 1] = time;
+                return;
+            }
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            times[size] = time;
+            values[size] = value;
+            size++;
+        }
+
+        void loop(double start, double length) {
+            this.start = start;
+            this.length = length;
+        }
+
+        /**
+         * @return The value at the given time, interpolated between the surrounding keyframes.
+         */
+        double evaluate(double now) {
+            double time = (now - start) % length;
+            if (time < 0)
+                time += length;
+            // first keyframe after the time
+            int low = 0, high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (times[middle] <= time)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+            if (low == 0)
+                return values[0];
+            if (low == size)
+                return values[size - 1];
+            double t0 = times[low - 1];
+            return values[low - 1] + (values[low] - values[low - 1]) * (time - t0) / (times[low] - t0);
+        }
+    }
+}
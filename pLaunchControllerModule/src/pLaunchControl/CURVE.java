@@ -0,0 +1,31 @@
+package pLaunchControl;
+
+/**
+ * Ways of mapping the position of a knob or slider to its value, between the minimum and maximum of its range.
+ * See {@link Knob#curve(CURVE)}.
+ */
+public enum CURVE {
+
+    /**
+     * The value moves by the same amount for each step of the control. This is the default.
+     */
+    LINEAR,
+    /**
+     * Each step of the control multiplies the value by the same factor, as for frequencies, zoom or exposure:
+     * slow at the start of the range, and fast at the end. The range must not include 0; otherwise the value
+     * at the middle of the control is about 3% of the range.
+     */
+    EXPONENTIAL,
+    /**
+     * The mirror of {@link #EXPONENTIAL}: fast at the start of the range, and slow at the end.
+     */
+    LOGARITHMIC,
+    /**
+     * Slow at both ends of the range, and fast in the middle, for fine adjustments near the minimum and maximum.
+     */
+    S_CURVE,
+    /**
+     * A smooth curve through points set with {@link Knob#curve(float...)}.
+     */
+    SPLINE
+}
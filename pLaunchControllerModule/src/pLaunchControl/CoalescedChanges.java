@@ -0,0 +1,57 @@
+package pLaunchControl;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The latest position of each knob and slider changed since the last frame.
+ * Changes are recorded by the MIDI receiver thread and taken once per frame by the
+ * Processing animation thread, so that a burst of messages from the same control
+ * results in a single update. Knobs use bits 0-31 and sliders bits 32-63 of the dirty set.
+ */
+final class CoalescedChanges {
+
+    static final int SLIDER_OFFSET = 32;
+
+    /**
+     * Set on the positions of controls in paired high-resolution mode, which are 14-bit positions.
+     */
+    static final int FINE = 1 << 16;
+
+    private final AtomicIntegerArray positions = new AtomicIntegerArray(64);
+    private final AtomicLongArray times = new AtomicLongArray(64);
+    private final AtomicLong dirty = new AtomicLong();
+
+    /**
+     * Records the latest position of a control. Called by the receiver thread.
+     * @param bit The index of the knob, or {@link #SLIDER_OFFSET} plus the index of the slider.
+     * @param position The new position.
+     * @param time The arrival time of the latest position, see {@link LatencyStats}, or 0.
+     */
+    void update(int bit, int position, long time) {
+        positions.set(bit, position);
+        times.set(bit, time);
+        long mask = 1L << bit;
+        long current;
+        do {
+            current = dirty.get();
+        } while ((current & mask) == 0 && !dirty.compareAndSet(current, current | mask));
+    }
+
+    /**
+     * Clears and returns the set of controls changed since the previous call.
+     * Positions of the returned controls must be read with {@link #position(int)} afterwards.
+     */
+    long take() {
+        return dirty.getAndSet(0);
+    }
+
+    int position(int bit) {
+        return positions.get(bit);
+    }
+
+    long time(int bit) {
+        return times.get(bit);
+    }
+}
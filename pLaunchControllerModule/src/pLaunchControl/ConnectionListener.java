@@ -0,0 +1,14 @@
+package pLaunchControl;
+
+/**
+ * Receives notifications when the controller is connected, after a non-blocking constructor
+ * found it in the background, or after it was plugged in again.
+ * Register a listener with {@link MidiController#addConnectionListener(ConnectionListener)}.
+ */
+public interface ConnectionListener {
+
+    /**
+     * Called when the controller is connected and ready, from a thread other than the sketch's animation thread.
+     */
+    void connected();
+}
@@ -0,0 +1,196 @@
+package pLaunchControl;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+
+/**
+ * Describes which MIDI messages are sent by the knobs, sliders and pads of a device.
+ * A layout is declared as plain data, listing the controller numbers of knobs and sliders,
+ * and the note numbers of pads, in the order of {@link KNOBS}, {@link SLIDERS} and {@link PADS}.
+ * The layout is compiled into a lookup table, so that decoding a message is a single array load,
+ * keyed by status and first data byte. The layout also describes how the pad lights are addressed
+ * by System Exclusive messages. Supporting a new device only requires declaring its layout.
+ */
+final class ControlLayout {
+
+    static final int NONE = 0;
+    static final int KNOB = 1;
+    static final int SLIDER = 2;
+    static final int PAD = 3;
+
+    /**
+     * 14-bit positions of knobs and sliders in paired high-resolution mode. Not returned by {@link #decode(int, int)},
+     * but used by the receiver once both halves of a position arrived. The index is the index in {@link ControlState}.
+     */
+    static final int FINE = 4;
+
+    /**
+     * Novation Launch Control, factory template 1: control changes and notes on MIDI channel 9.
+     */
+    static final ControlLayout LAUNCH_CONTROL = new ControlLayout(0xB8, 0x98, 0x88)
+            .knobs(21, 22, 23, 24, 25, 26, 27, 28,
+                    41, 42, 43, 44, 45, 46, 47, 48)
+            .pads(9, 10, 11, 12, 25, 26, 27, 28)
+            .leds(0x0A, 0, 1);
+
+    /**
+     * Novation Launch Control XL, factory template 1: control changes and notes on MIDI channel 1.
+     */
+    static final ControlLayout LAUNCH_CONTROL_XL = new ControlLayout(0xB0, 0x90, 0x80)
+            .knobs(13, 14, 15, 16, 17, 18, 19, 20,
+                    29, 30, 31, 32, 33, 34, 35, 36,
+                    49, 50, 51, 52, 53, 54, 55, 56)
+            .sliders(77, 78, 79, 80, 81, 82, 83, 84)
+            .pads(41, 42, 43, 44, 57, 58, 59, 60,
+                    73, 74, 75, 76, 89, 90, 91, 92)
+            .leds(0x11, 24, 16);
+
+    // values() returns a copy of the array on every call, so they are cached here
+    static final KNOBS[] KNOB_VALUES = KNOBS.values();
+    static final SLIDERS[] SLIDER_VALUES = SLIDERS.values();
+    static final PADS[] PAD_VALUES = PADS.values();
+
+    private static final int NOTE_OFFSET = 128;
+
+    private final int controlChangeStatus;
+    private final int noteOnStatus;
+    private final int noteOffStatus;
+
+    /**
+     * Entries 0-127 are indexed by the controller number of control change messages,
+     * entries 128-255 by the note number of note on/off messages.
+     * Each entry holds (type << 8) | index, where type is one of {@link #KNOB}, {@link #SLIDER}
+     * or {@link #PAD}, and 0 for messages not mapped to any control.
+     */
+    private final short[] table = new short[2 * 128];
+
+    private int knobCount, sliderCount, padCount;
+    private byte ledDevice;
+    private int padLedOffset;
+    private int ledsPerMessage = 1;
+
+    private ControlLayout(int controlChangeStatus, int noteOnStatus, int noteOffStatus) {
+        this.controlChangeStatus = controlChangeStatus;
+        this.noteOnStatus = noteOnStatus;
+        this.noteOffStatus = noteOffStatus;
+    }
+
+    private ControlLayout knobs(int... controllers) {
+        knobCount = map(KNOB, 0, controllers);
+        return this;
+    }
+
+    private ControlLayout sliders(int... controllers) {
+        sliderCount = map(SLIDER, 0, controllers);
+        return this;
+    }
+
+    private ControlLayout pads(int... notes) {
+        padCount = map(PAD, NOTE_OFFSET, notes);
+        return this;
+    }
+
+    /**
+     * @param device The device byte of the System Exclusive messages setting LEDs.
+     * @param padLedOffset The LED index of the first pad.
+     * @param ledsPerMessage How many LEDs can be set in a single message.
+     */
+    private ControlLayout leds(int device, int padLedOffset, int ledsPerMessage) {
+        this.ledDevice = (byte) device;
+        this.padLedOffset = padLedOffset;
+        this.ledsPerMessage = ledsPerMessage;
+        return this;
+    }
+
+    private int map(int type, int offset, int[] numbers) {
+        for (int i = 0; i < numbers.length; i++) {
+            if (table[offset + numbers[i]] != NONE)
+                throw new IllegalStateException("MIDI number " + numbers[i] + " is mapped twice in the layout.");
+            table[offset + numbers[i]] = (short) (type << 8 | i);
+        }
+        return numbers.length;
+    }
+
+    /**
+     * Finds the control sending a message, given its status and first data byte.
+     * @return The encoded control, to be read with {@link #type(int)} and {@link #index(int)}.
+     */
+    int decode(int status, int data1) {
+        if (status == controlChangeStatus)
+            return table[data1 & 0x7F];
+        if (status == noteOnStatus || status == noteOffStatus)
+            return table[NOTE_OFFSET + (data1 & 0x7F)];
+        return NONE;
+    }
+
+    /**
+     * Finds the control sending a message. Short messages are decoded without copying their contents.
+     */
+    int decode(MidiMessage message) {
+        if (message instanceof ShortMessage) {
+            ShortMessage shortMessage = (ShortMessage) message;
+            return decode(shortMessage.getStatus(), shortMessage.getData1());
+        }
+        if (message.getLength() < 3)
+            return NONE;
+        return decode(message.getStatus(), message.getMessage()[1]);
+    }
+
+    boolean isControlChange(MidiMessage message) {
+        return message.getStatus() == controlChangeStatus;
+    }
+
+    boolean isNoteOff(MidiMessage message) {
+        return message.getStatus() == noteOffStatus;
+    }
+
+    /**
+     * @return The first data byte of a message, the controller number of control changes.
+     */
+    static int data1(MidiMessage message) {
+        if (message instanceof ShortMessage)
+            return ((ShortMessage) message).getData1();
+        return message.getLength() < 2 ? 0 : message.getMessage()[1];
+    }
+
+    /**
+     * @return The second data byte of a message, the position of knobs and sliders or the velocity of pads.
+     */
+    static int data2(MidiMessage message) {
+        if (message instanceof ShortMessage)
+            return ((ShortMessage) message).getData2();
+        return message.getLength() < 3 ? 0 : message.getMessage()[2];
+    }
+
+    static int type(int control) {
+        return control >>> 8;
+    }
+
+    static int index(int control) {
+        return control & 0xFF;
+    }
+
+    int knobCount() {
+        return knobCount;
+    }
+
+    int sliderCount() {
+        return sliderCount;
+    }
+
+    int padCount() {
+        return padCount;
+    }
+
+    byte ledDevice() {
+        return ledDevice;
+    }
+
+    int padLedOffset() {
+        return padLedOffset;
+    }
+
+    int ledsPerMessage() {
+        return ledsPerMessage;
+    }
+}
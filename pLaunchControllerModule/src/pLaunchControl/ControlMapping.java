@@ -0,0 +1,319 @@
+package pLaunchControl;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * The settings of the controls of a device read from a mapping file, see {@link MidiController#loadMapping(String)}.
+ * <p>A mapping is compiled once, when the file is read: control names and values are parsed, and the variables of the
+ * sketch are resolved into {@link FieldBinding}s. Applying it then copies every setting of every control, from the
+ * variables and ranges to the knob and pad modes, in a single write of the {@link ControlState}, so that a message
+ * received meanwhile is handled either with the previous mapping or with the new one, never with a mix of both.
+ * The attached variables are updated afterwards, from the animation thread.</p>
+ * <p>Settings are only applied when they differ from the previously applied mapping, so that reloading a file does not
+ * reset the default value, smoothing or high-resolution mode of the controls whose lines did not change.
+ * Controls, and settings, missing from the file keep the configuration set by the sketch.</p>
+ */
+final class ControlMapping {
+
+    private final Setting[] controls;
+    private final Setting[] pads;
+    private final PADMODE padMode;
+    private final int knobCount;
+
+    /**
+     * The settings of one control. Null values and NaN numbers are not set in the file.
+     */
+    private static final class Setting {
+        boolean bound;
+        String variable;
+        FieldBinding binding;
+        CURVE curve;
+        float[] points;
+        float min = Float.NaN;
+        float max = Float.NaN;
+        float defaultValue = Float.NaN;
+        TAKEOVER takeover;
+        SMOOTHING smoothing;
+        float smoothingSeconds;
+        KNOBMODE mode;
+        int steps;
+        float acceleration = Float.NaN;
+        byte resolution = -1;
+        int lsbController;
+        PADMODE padMode;
+        byte[] colours;
+    }
+
+    private ControlMapping(Setting[] controls, Setting[] pads, PADMODE padMode, int knobCount) {
+        this.controls = controls;
+        this.pads = pads;
+        this.padMode = padMode;
+        this.knobCount = knobCount;
+    }
+
+    /**
+     * Parses the settings of a mapping file, and resolves its variables in the sketch.
+     * @param properties The lines of the file.
+     * @param sketch The object declaring the variables.
+     * @throws IllegalArgumentException If a line names an unknown control or setting, or has an invalid value.
+     */
+    static ControlMapping compile(Properties properties, Object sketch, ControlState state) {
+        int knobCount = state.knobCount();
+        Setting[] controls = new Setting[knobCount + state.sliderCount()];
+        Setting[] pads = new Setting[state.padValue.length];
+        PADMODE padMode = null;
+        for (String key : properties.stringPropertyNames()) {
+            String value = properties.getProperty(key).trim();
+            try {
+                if (key.equals("padMode")) {
+                    padMode = PADMODE.valueOf(value.toUpperCase());
+                    continue;
+                }
+                int dot = key.lastIndexOf('.');
+                if (dot < 0)
+                    throw new IllegalArgumentException("unknown setting");
+                String name = key.substring(0, dot);
+                String setting = key.substring(dot + 1);
+                KNOBS knob = find(KNOBS.values(), name);
+                SLIDERS slider = find(SLIDERS.values(), name);
+                PADS pad = find(PADS.values(), name);
+                if (knob != null && knob.code() < knobCount) {
+                    Setting s = controls[knob.code()] = setting(controls[knob.code()]);
+                    if (!setControl(s, setting, value, sketch) && !setKnob(s, setting, value))
+                        throw new IllegalArgumentException("unknown setting");
+                } else if (slider != null && slider.code() < state.sliderCount()) {
+                    int index = knobCount + slider.code();
+                    if (!setControl(controls[index] = setting(controls[index]), setting, value, sketch))
+                        throw new IllegalArgumentException("unknown setting");
+                } else if (pad != null && pad.code() < pads.length) {
+                    if (!setPad(pads[pad.code()] = setting(pads[pad.code()]), setting, value, sketch))
+                        throw new IllegalArgumentException("unknown setting");
+                } else {
+                    throw new IllegalArgumentException("the controller has no control named " + name);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("invalid line " + key + " = " + value + ": " + e.getMessage(), e);
+            }
+        }
+        return new ControlMapping(controls, pads, padMode, knobCount);
+    }
+
+    private static Setting setting(Setting setting) {
+        return setting == null ? new Setting() : setting;
+    }
+
+    private static <E extends Enum<E>> E find(E[] values, String name) {
+        for (E value : values)
+            if (value.name().equals(name))
+                return value;
+        return null;
+    }
+
+    private static boolean setControl(Setting s, String setting, String value, Object sketch) {
+        switch (setting) {
+            case "variable":
+                s.bound = true;
+                s.variable = value.isEmpty() ? null : value;
+                s.binding = FieldBinding.forFloat(sketch, s.variable);
+                return true;
+            case "range":
+                String[] range = value.split("\\s*,\\s*");
+                if (range.length != 2)
+                    throw new IllegalArgumentException("expected the minimum and maximum values, separated by a comma");
+                s.min = Float.parseFloat(range[0]);
+                s.max = Float.parseFloat(range[1]);
+                return true;
+            case "default":
+                s.defaultValue = Float.parseFloat(value);
+                return true;
+            case "curve":
+                String[] curve = value.split("[\\s,]+");
+                s.curve = CURVE.valueOf(curve[0].toUpperCase());
+                s.points = null;
+                if (s.curve == CURVE.SPLINE) {
+                    if (curve.length < 3)
+                        throw new IllegalArgumentException("expected at least 2 points after SPLINE");
+                    s.points = new float[curve.length - 1];
+                    for (int i = 1; i < curve.length; i++)
+                        s.points[i - 1] = Float.parseFloat(curve[i]);
+                }
+                return true;
+            case "takeover":
+                s.takeover = TAKEOVER.valueOf(value.toUpperCase());
+                return true;
+            case "smoothing":
+                String[] smoothing = value.split("[\\s,]+");
+                s.smoothing = SMOOTHING.valueOf(smoothing[0].toUpperCase());
+                s.smoothingSeconds = smoothing.length > 1 ? Float.parseFloat(smoothing[1]) : 0;
+                if (s.smoothingSeconds <= 0 && s.smoothing != SMOOTHING.NONE)
+                    throw new IllegalArgumentException("expected the smoothing time after the smoothing mode");
+                return true;
+            case "highResolution":
+                s.lsbController = 0;
+                if (value.equalsIgnoreCase("OFF")) {
+                    s.resolution = HighResolution.OFF;
+                } else if (value.equalsIgnoreCase("ESTIMATED")) {
+                    s.resolution = HighResolution.ESTIMATED;
+                } else {
+                    s.resolution = HighResolution.PAIRED;
+                    s.lsbController = Integer.parseInt(value);
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean setKnob(Setting s, String setting, String value) {
+        switch (setting) {
+            case "mode":
+                s.mode = KNOBMODE.valueOf(value.toUpperCase());
+                return true;
+            case "steps":
+                s.steps = Integer.parseInt(value);
+                if (s.steps <= 0)
+                    throw new IllegalArgumentException("the number of steps must be positive");
+                return true;
+            case "acceleration":
+                s.acceleration = Float.parseFloat(value);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean setPad(Setting s, String setting, String value, Object sketch) {
+        switch (setting) {
+            case "variable":
+                s.bound = true;
+                s.variable = value.isEmpty() ? null : value;
+                s.binding = FieldBinding.forBoolean(sketch, s.variable);
+                return true;
+            case "default":
+                if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false"))
+                    throw new IllegalArgumentException("expected true or false");
+                s.defaultValue = Boolean.parseBoolean(value) ? 1 : 0;
+                return true;
+            case "mode":
+                String[] mode = value.split("[\\s,]+");
+                s.padMode = PADMODE.valueOf(mode[0].toUpperCase());
+                s.colours = null;
+                if (mode.length > 1) {
+                    if (s.padMode != PADMODE.CYCLE || mode.length < 3)
+                        throw new IllegalArgumentException("expected at least 2 colours after CYCLE");
+                    s.colours = new byte[mode.length - 1];
+                    for (int i = 1; i < mode.length; i++)
+                        s.colours[i - 1] = colour(mode[i]);
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return The value of a constant of {@link LedConstants}, such as GREEN_FULL.
+     */
+    private static byte colour(String name) {
+        try {
+            return LedConstants.class.getField(name.toUpperCase()).getByte(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("unknown colour " + name);
+        }
+    }
+
+    /**
+     * Applies the mapping to the controls of a device. Called by the animation thread.
+     * @param previous The mapping applied before, or null.
+     */
+    void apply(ControlMapping previous, ControlState state, MidiDevice device) {
+        Setting[] before = previous == null ? new Setting[controls.length] : previous.controls;
+        Setting[] padsBefore = previous == null ? new Setting[pads.length] : previous.pads;
+        state.write(() -> {
+            FieldBinding[] bindings = state.bindings.clone();
+            for (int control = 0; control < controls.length; control++) {
+                Setting s = controls[control];
+                if (s == null)
+                    continue;
+                if (s.bound)
+                    bindings[control] = s.binding;
+                apply(state, control, s, before[control] == null ? new Setting() : before[control]);
+            }
+            FieldBinding[] padBindings = state.padBindings.clone();
+            for (int pad = 0; pad < pads.length; pad++) {
+                Setting s = pads[pad];
+                if (s == null)
+                    continue;
+                if (s.bound)
+                    padBindings[pad] = s.binding;
+                Setting b = padsBefore[pad] == null ? new Setting() : padsBefore[pad];
+                if (!Float.isNaN(s.defaultValue) && b.defaultValue != s.defaultValue)
+                    state.padValue[pad] = s.defaultValue != 0;
+                if (s.padMode != null && (s.padMode != b.padMode || !Arrays.equals(s.colours, b.colours)))
+                    device.getPad(ControlLayout.PAD_VALUES[pad]).putMode(s.padMode, s.colours);
+            }
+            state.bindings = bindings;
+            state.padBindings = padBindings;
+            if (padMode != null && (previous == null || previous.padMode != padMode))
+                device.setPadMode(padMode);
+        });
+
+        for (int control = 0; control < controls.length; control++) {
+            Setting s = controls[control];
+            if (s == null)
+                continue;
+            if (control < knobCount) {
+                Knob knob = device.getKnob(ControlLayout.KNOB_VALUES[control]);
+                if (s.bound)
+                    knob.variable = s.variable;
+                knob.refresh();
+            } else {
+                Slider slider = device.getSlider(ControlLayout.SLIDER_VALUES[control - knobCount]);
+                if (s.bound)
+                    slider.variable = s.variable;
+                slider.refresh();
+            }
+        }
+        for (int pad = 0; pad < pads.length; pad++) {
+            Setting s = pads[pad];
+            if (s == null)
+                continue;
+            Pad p = device.getPad(ControlLayout.PAD_VALUES[pad]);
+            if (s.bound)
+                p.variable = s.variable;
+            p.refresh();
+            Setting b = padsBefore[pad] == null ? new Setting() : padsBefore[pad];
+            if (s.padMode != null && (s.padMode != b.padMode || !Arrays.equals(s.colours, b.colours)))
+                p.showLed();
+        }
+    }
+
+    /**
+     * Copies the settings of a knob or slider into the state, the caller holding its sequence lock.
+     */
+    private void apply(ControlState state, int control, Setting s, Setting before) {
+        if (control < knobCount && state.encoders != null) {
+            if (s.mode != null && s.mode != before.mode)
+                state.putMode(control, s.mode);
+            if (s.steps > 0 && s.steps != before.steps)
+                state.encoders.steps(control, s.steps);
+            if (!Float.isNaN(s.acceleration) && s.acceleration != before.acceleration)
+                state.encoders.acceleration(control, s.acceleration);
+        }
+        if (s.resolution >= 0 && state.resolution != null
+                && (s.resolution != before.resolution || s.lsbController != before.lsbController))
+            state.putResolution(control, s.resolution, s.lsbController);
+        if (s.curve != null)
+            state.putCurve(control, s.curve, s.points);
+        if (!Float.isNaN(s.min))
+            state.putRange(control, s.min, s.max);
+        if (!Float.isNaN(s.defaultValue) && before.defaultValue != s.defaultValue)
+            state.putDefault(control, s.defaultValue);
+        if (s.takeover != null && s.takeover != before.takeover)
+            state.setTakeover(control, s.takeover);
+        if (state.smoothing != null && s.smoothing != null
+                && (s.smoothing != before.smoothing || s.smoothingSeconds != before.smoothingSeconds))
+            state.smoothing.configure(control, s.smoothing, s.smoothingSeconds, state.valueNormal(control));
+    }
+}
@@ -0,0 +1,712 @@
+package pLaunchControl;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The state of all knobs, sliders and pads of a device, kept in primitive arrays indexed by control,
+ * knobs first and then sliders, in the order of {@link KNOBS} and {@link SLIDERS}; pads in the order of {@link PADS}.
+ * {@link Knob}, {@link Slider} and {@link Pad} objects are views over these arrays, so reading every control
+ * of a device touches a few contiguous arrays instead of one object per control, and the values of all
+ * controls can be copied at once.
+ * <p>The value of a control is its current value, according to its range, or its default value until the
+ * physical control reaches the default value.</p>
+ * <p>Changes are guarded by a sequence lock: a writer makes the sequence odd while changing the arrays,
+ * and even again when done. Readers copying several controls never block writers; they copy the arrays
+ * and retry if the sequence changed meanwhile, so a copy never mixes values from before and after a change.</p>
+ */
+final class ControlState {
+
+    /**
+     * Set while the value of the control does not follow the physical control, after {@link Knob#defaultValue(float)}
+     * or after a knob left relative mode, until the control takes the value over, see {@link TAKEOVER}.
+     */
+    static final byte HELD = 1;
+
+    // ordinals of TAKEOVER
+    private static final byte JUMP = 0;
+    private static final byte PICKUP = 1;
+    private static final byte SCALE = 2;
+
+    private static final float MAX_POSITION = 127f;
+
+    final int[] position;
+    final float[] value;
+    final float[] min;
+    final float[] max;
+    final byte[] flags;
+    private final byte[] takeover;
+
+    /**
+     * The last position received from the physical control, or -1.
+     */
+    private final int[] physical;
+
+    /**
+     * The position of knobs and sliders, normalized between 0 and 1, with the precision of the
+     * high-resolution mode of each control.
+     */
+    final double[] fine;
+
+    final boolean[] padValue;
+
+    /**
+     * The response curves of knobs and sliders, and the value of each control at each of its positions,
+     * or null for linear controls, see {@link Curves}.
+     */
+    final Curves curves;
+    private final float[][] table;
+
+    /**
+     * The variables attached to the knobs and sliders, and to the pads, or null. The arrays are replaced on every
+     * change, under the sequence lock, so that a mapping attaches all its variables at once, see {@link ControlMapping}.
+     */
+    volatile FieldBinding[] bindings;
+    volatile FieldBinding[] padBindings;
+
+    /**
+     * Smooths the values of knobs and sliders, or null for controls not attached to a device,
+     * which are never advanced.
+     */
+    final Smoothing smoothing;
+
+    /**
+     * The high-resolution mode of knobs and sliders, or null for controls not attached to a device.
+     */
+    final HighResolution resolution;
+
+    /**
+     * The relative mode of knobs, or null for controls not attached to a device.
+     */
+    final Encoders encoders;
+
+    private final int knobCount;
+    private final AtomicLong sequence = new AtomicLong();
+
+    ControlState(int knobs, int sliders, int pads) {
+        this(knobs, sliders, pads, true);
+    }
+
+    /**
+     * @param attached True for the controls of a device, which can be smoothed, estimated in high resolution and
+     *                 set to relative modes; false for a control created on its own.
+     */
+    private ControlState(int knobs, int sliders, int pads, boolean attached) {
+        int controls = knobs + sliders;
+        knobCount = knobs;
+        position = new int[controls];
+        value = new float[controls];
+        min = new float[controls];
+        max = new float[controls];
+        flags = new byte[controls];
+        fine = new double[controls];
+        takeover = new byte[controls];
+        physical = new int[controls];
+        Arrays.fill(max, 127);
+        Arrays.fill(takeover, PICKUP);
+        Arrays.fill(physical, -1);
+        padValue = new boolean[pads];
+        curves = new Curves(controls);
+        table = new float[controls][];
+        bindings = new FieldBinding[controls];
+        padBindings = new FieldBinding[pads];
+        this.smoothing = attached ? new Smoothing(controls) : null;
+        this.resolution = attached ? new HighResolution(controls) : null;
+        this.encoders = attached ? new Encoders(knobs) : null;
+    }
+
+    /**
+     * @return The state of a single control created on its own, outside of a device.
+     */
+    static ControlState detached() {
+        return new ControlState(1, 0, 1, false);
+    }
+
+    int knobCount() {
+        return knobCount;
+    }
+
+    int sliderCount() {
+        return value.length - knobCount;
+    }
+
+    boolean held(int control) {
+        return (flags[control] & HELD) != 0;
+    }
+
+    /**
+     * @return The value of the control, normalized between 0 and 1.
+     */
+    float valueNormal(int control) {
+        return (value[control] - min[control]) / (max[control] - min[control]);
+    }
+
+    /**
+     * @return The value of a knob or slider at one of its 128 positions, a single load from its table.
+     */
+    private float valueAt(int control, int position) {
+        float[] table = this.table[control];
+        if (table == null)
+            return min[control] + position / MAX_POSITION * (max[control] - min[control]);
+        return table[position * ((table.length - 1) / (Curves.POSITIONS - 1))];
+    }
+
+    /**
+     * @return The value of a knob or slider at a position normalized between 0 and 1, interpolated
+     * between the two closest entries of its table.
+     */
+    private double valueAt(int control, double normal) {
+        float[] table = this.table[control];
+        if (table == null)
+            return min[control] + normal * (max[control] - (double) min[control]);
+        double x = normal * (table.length - 1);
+        int i = (int) x;
+        if (i >= table.length - 1)
+            return table[table.length - 1];
+        return table[i] + (x - i) * (table[i + 1] - table[i]);
+    }
+
+    /**
+     * @return The position of the knob or slider, normalized between 0 and 1, at which it has the given value,
+     * found by binary search in its table, assuming its curve always rises or always falls.
+     */
+    private double positionOf(int control, float value) {
+        float[] table = this.table[control];
+        if (table == null)
+            return (value - min[control]) / (max[control] - min[control]);
+        int last = table.length - 1;
+        boolean rising = table[last] >= table[0];
+        if (rising ? value <= table[0] : value >= table[0])
+            return 0;
+        if (rising ? value >= table[last] : value <= table[last])
+            return 1;
+        int low = 0, high = last;
+        while (high - low > 1) {
+            int middle = (low + high) >>> 1;
+            if (rising == table[middle] <= value)
+                low = middle;
+            else
+                high = middle;
+        }
+        double t = table[high] == table[low] ? 0 : (value - table[low]) / (double) (table[high] - table[low]);
+        return (low + t) / last;
+    }
+
+    /**
+     * @return The position of the control matching its value, normalized between 0 and 1.
+     */
+    private double positionNormal(int control) {
+        return table[control] == null ? valueNormal(control) : positionOf(control, value[control]);
+    }
+
+    private int tableSize(int control) {
+        return resolution != null && resolution.mode(control) == HighResolution.PAIRED ? HighResolution.MAX_FINE + 1 : Curves.POSITIONS;
+    }
+
+    // ****** WRITERS ****** //
+
+    private void beginWrite() {
+        long s;
+        while (((s = sequence.get()) & 1) != 0 || !sequence.compareAndSet(s, s + 1))
+            Thread.onSpinWait();
+        VarHandle.storeStoreFence();
+    }
+
+    private void endWrite() {
+        sequence.incrementAndGet();
+    }
+
+    /**
+     * Moves a knob or slider, updating its value according to its range. While the value of the control is held,
+     * the control takes the value over according to its {@link TAKEOVER} mode.
+     * @return False if the value of the control did not change.
+     */
+    boolean setPosition(int control, int position) {
+        return setPosition(control, position, 0);
+    }
+
+    /**
+     * Moves a knob or slider, see {@link #setPosition(int, int)}.
+     * @param arrival The {@link System#nanoTime()} of the arrival of the message, from which the speed of the control
+     *                is measured in estimated high-resolution mode, or 0 to use the current time.
+     */
+    boolean setPosition(int control, int position, long arrival) {
+        beginWrite();
+        try {
+            return putPosition(control, position, arrival);
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Moves a knob or slider from a message of the device: the data is an increment for a knob in relative mode,
+     * and a position otherwise. The mode of the knob is read under the sequence lock, so that a message is handled
+     * either before or after a {@link ControlMapping} changing the mode, the range or the resolution of the control.
+     * @param arrival The {@link System#nanoTime()} of the arrival of the message, or 0 to use the current time.
+     * @return False if the value of the control did not change.
+     */
+    boolean receive(int control, int data, long arrival) {
+        beginWrite();
+        try {
+            if (control < knobCount && encoders != null && encoders.relative(control)) {
+                double increment = encoders.increment(control, data, arrival == 0 ? System.nanoTime() : arrival);
+                return increment != 0 && putIncrement(control, increment);
+            }
+            return putPosition(control, data, arrival);
+        } finally {
+            endWrite();
+        }
+    }
+
+    private boolean putPosition(int control, int position, long arrival) {
+        int previous = physical[control];
+        physical[control] = position;
+        if (held(control)) {
+            if (!takenOver(control, previous, position))
+                return takeover[control] == SCALE && scale(control, previous, position);
+        } else if (this.position[control] == position) {
+            return false;
+        }
+        flags[control] &= ~HELD;
+        if (resolution != null && resolution.mode(control) == HighResolution.ESTIMATED)
+            resolution.moved(control, this.position[control], position, arrival == 0 ? System.nanoTime() : arrival);
+        else
+            fine[control] = position / MAX_POSITION;
+        this.position[control] = position;
+        value[control] = valueAt(control, position);
+        return true;
+    }
+
+    /**
+     * @return True if a control whose value is held takes the value over, and follows the physical control from now on.
+     */
+    private boolean takenOver(int control, int previous, int position) {
+        return takeover[control] == JUMP || reached(previous, position, positionNormal(control) * MAX_POSITION);
+    }
+
+    /**
+     * @return True if the control reached or passed over the target position while moving from the previous position.
+     */
+    private static boolean reached(int previous, int position, double target) {
+        if (previous < 0)
+            return Math.abs(position - target) <= 0.5;
+        return Math.min(previous, position) - 0.5 <= target && target <= Math.max(previous, position) + 0.5;
+    }
+
+    /**
+     * Moves a held value in the direction of the control, so that both meet at the end of the range.
+     */
+    private boolean scale(int control, int previous, int position) {
+        if (previous < 0 || previous == position)
+            return false;
+        double target = positionNormal(control) * MAX_POSITION;
+        if (position > previous)
+            target += (position - previous) * (MAX_POSITION - target) / (MAX_POSITION - previous);
+        else
+            target -= (previous - position) * target / previous;
+        setNormal(control, target / MAX_POSITION);
+        return true;
+    }
+
+    private void setNormal(int control, double normal) {
+        fine[control] = normal;
+        // the estimate restarts from the new position, instead of moving back to where the control was going
+        if (resolution != null && resolution.mode(control) == HighResolution.ESTIMATED)
+            resolution.placed(control, normal * MAX_POSITION);
+        position[control] = (int) Math.round(normal * MAX_POSITION);
+        value[control] = (float) valueAt(control, normal);
+    }
+
+    /**
+     * Moves a knob in relative mode by a fraction of its range.
+     * @return False if the value of the knob did not change.
+     */
+    private boolean putIncrement(int control, double increment) {
+        double normal = Math.max(0, Math.min(1, fine[control] + increment));
+        if (normal == fine[control] && !held(control))
+            return false;
+        flags[control] &= ~HELD;
+        setNormal(control, normal);
+        return true;
+    }
+
+    /**
+     * Sets the value of a knob or slider played back by an automation lane, and holds it until the physical
+     * control takes it over.
+     * @return False if the value of the control did not change.
+     */
+    boolean setAutomated(int control, double normal) {
+        beginWrite();
+        try {
+            if (fine[control] == normal)
+                return false;
+            flags[control] |= HELD;
+            setNormal(control, normal);
+            return true;
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Sets the values of all knobs and sliders recalled from a preset at once, and holds them until the
+     * physical controls take them over.
+     * @param normals The values, normalized between 0 and 1, indexed like the controls.
+     * @return A bit set of the controls whose value changed.
+     */
+    long setNormals(double[] normals) {
+        long changed = 0;
+        beginWrite();
+        try {
+            for (int control = 0; control < fine.length; control++) {
+                if (fine[control] == normals[control])
+                    continue;
+                flags[control] |= HELD;
+                setNormal(control, normals[control]);
+                changed |= 1L << control;
+            }
+            return changed;
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Sets how a knob or slider takes a held value over. Takes effect at the next message of the control, whose
+     * position is handled under the sequence lock, so it needs no lock itself.
+     */
+    void setTakeover(int control, TAKEOVER takeover) {
+        this.takeover[control] = (byte) takeover.ordinal();
+    }
+
+    /**
+     * Sets how a knob sends its movements, see {@link Knob#mode(KNOBMODE)}.
+     */
+    void setMode(int control, KNOBMODE mode) {
+        beginWrite();
+        try {
+            putMode(control, mode);
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Sets how a knob sends its movements, the caller holding the sequence lock, see {@link #write(Runnable)}.
+     * A knob leaving relative mode holds its value until it takes it over.
+     */
+    void putMode(int control, KNOBMODE mode) {
+        boolean wasRelative = encoders.relative(control);
+        if (mode != KNOBMODE.ABSOLUTE)
+            putResolution(control, HighResolution.OFF, 0);
+        encoders.mode(control, mode);
+        if (wasRelative && mode == KNOBMODE.ABSOLUTE)
+            flags[control] |= HELD;
+    }
+
+    /**
+     * Moves a knob or slider in paired high-resolution mode, see {@link HighResolution}. While the value of the control
+     * is held, the control takes the value over according to its {@link TAKEOVER} mode, following its coarse position.
+     * @param fine The 14-bit position of the control.
+     * @return False if the control was not moved.
+     */
+    boolean setFine(int control, int fine) {
+        beginWrite();
+        try {
+            int position = fine >> 7;
+            int previous = physical[control];
+            physical[control] = position;
+            if (held(control)) {
+                if (!takenOver(control, previous, position))
+                    return takeover[control] == SCALE && scale(control, previous, position);
+            } else if (this.fine[control] == fine / (double) HighResolution.MAX_FINE) {
+                return false;
+            }
+            double normal = fine / (double) HighResolution.MAX_FINE;
+            flags[control] &= ~HELD;
+            this.position[control] = position;
+            this.fine[control] = normal;
+            value[control] = (float) valueAt(control, normal);
+            return true;
+        } finally {
+            endWrite();
+        }
+    }
+
+    void setDefault(int control, float defaultValue) {
+        beginWrite();
+        try {
+            putDefault(control, defaultValue);
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Sets the default value of a knob or slider, the caller holding the sequence lock, see {@link #write(Runnable)}.
+     */
+    void putDefault(int control, float defaultValue) {
+        //approximate the position
+        fine[control] = positionOf(control, defaultValue);
+        position[control] = (int) Math.round(MAX_POSITION * fine[control]);
+        value[control] = defaultValue;
+        flags[control] |= HELD;
+    }
+
+    /**
+     * Changes several arrays at once under the sequence lock, so that readers see either none or all of the change.
+     * The change must not call the other writers of the state, which would wait for the lock forever.
+     */
+    void write(Runnable change) {
+        beginWrite();
+        try {
+            change.run();
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Attaches a variable to a knob or slider.
+     * @param binding The variable, or null to detach the variable.
+     */
+    void bind(int control, FieldBinding binding) {
+        beginWrite();
+        try {
+            FieldBinding[] bindings = this.bindings.clone();
+            bindings[control] = binding;
+            this.bindings = bindings;
+        } finally {
+            endWrite();
+        }
+    }
+
+    void bindPad(int pad, FieldBinding binding) {
+        beginWrite();
+        try {
+            FieldBinding[] bindings = padBindings.clone();
+            bindings[pad] = binding;
+            padBindings = bindings;
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Changes the high-resolution mode of a knob or slider, see {@link HighResolution}.
+     */
+    void setResolution(int control, byte mode, int lsbController) {
+        beginWrite();
+        try {
+            putResolution(control, mode, lsbController);
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Sets the high-resolution mode of a knob or slider, the caller holding the sequence lock, see {@link #write(Runnable)}.
+     */
+    void putResolution(int control, byte mode, int lsbController) {
+        resolution.configure(control, mode, lsbController);
+        fine[control] = position[control] / MAX_POSITION;
+        table[control] = curves.table(control, tableSize(control), min[control], max[control]);
+    }
+
+    void setRange(int control, float minValue, float maxValue) {
+        float[] table = curves.table(control, tableSize(control), minValue, maxValue);
+        beginWrite();
+        try {
+            min[control] = minValue;
+            max[control] = maxValue;
+            this.table[control] = table;
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Sets the range of a knob or slider, the caller holding the sequence lock, see {@link #write(Runnable)}.
+     */
+    void putRange(int control, float minValue, float maxValue) {
+        min[control] = minValue;
+        max[control] = maxValue;
+        table[control] = curves.table(control, tableSize(control), minValue, maxValue);
+        value[control] = (float) valueAt(control, fine[control]);
+    }
+
+    /**
+     * Changes the response curve of a knob or slider, and compiles it into its table. The value of the control
+     * follows the new curve when the control is next moved.
+     * @param points The points of a {@link CURVE#SPLINE}, or null.
+     */
+    void setCurve(int control, CURVE curve, float[] points) {
+        curves.set(control, curve, points);
+        float[] table = curves.table(control, tableSize(control), min[control], max[control]);
+        beginWrite();
+        try {
+            this.table[control] = table;
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Changes the response curve of a knob or slider, the caller holding the sequence lock, see {@link #write(Runnable)}.
+     */
+    void putCurve(int control, CURVE curve, float[] points) {
+        curves.set(control, curve, points);
+        table[control] = curves.table(control, tableSize(control), min[control], max[control]);
+    }
+
+    void setPad(int pad, boolean value) {
+        beginWrite();
+        try {
+            padValue[pad] = value;
+        } finally {
+            endWrite();
+        }
+    }
+
+    // ****** READERS ****** //
+
+    /**
+     * Starts reading settings changed under the sequence lock, such as the modes of the pads. The reader retries
+     * until {@link #validate(long)} returns true, so that the settings read all come from before or all from after
+     * a {@link #write(Runnable)}.
+     * @return The sequence number to validate.
+     */
+    long beginRead() {
+        long s;
+        while (((s = sequence.get()) & 1) != 0)
+            Thread.onSpinWait();
+        return s;
+    }
+
+    /**
+     * @return False if a change happened since {@link #beginRead()}, and the settings must be read again.
+     */
+    boolean validate(long sequence) {
+        VarHandle.loadLoadFence();
+        return this.sequence.get() == sequence;
+    }
+
+    /**
+     * Copies the state of all controls at once, retrying until no change happened during the copy.
+     * Null arrays are not copied.
+     * @return The sequence number of the copied state.
+     */
+    private long read(float[] values, int valuesOffset, int[] positions, double[] fines, boolean[] pads) {
+        while (true) {
+            long s = sequence.get();
+            if ((s & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            if (values != null)
+                System.arraycopy(value, 0, values, valuesOffset, value.length);
+            if (positions != null)
+                System.arraycopy(position, 0, positions, 0, position.length);
+            if (fines != null)
+                System.arraycopy(fine, 0, fines, 0, fine.length);
+            if (pads != null)
+                System.arraycopy(padValue, 0, pads, 0, padValue.length);
+            VarHandle.loadLoadFence();
+            if (sequence.get() == s)
+                return s;
+        }
+    }
+
+    /**
+     * Estimates the position of the controls in estimated high-resolution mode, from the messages received
+     * so far. Called once per frame by the animation thread, under the sequence lock like the other writers,
+     * so that a copy of the state sees the estimated positions with the values they belong to.
+     */
+    void estimate(long now) {
+        if (resolution == null || !resolution.estimated())
+            return;
+        beginWrite();
+        try {
+            resolution.estimate(now, position, fine);
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Advances the smoothed values towards the values of the controls. The values are read under the sequence lock,
+     * like a copy of the state, so that the thread receiving the messages never touches the smoothing.
+     * Called once per frame by the animation thread.
+     */
+    void smooth(long now) {
+        if (smoothing == null)
+            return;
+        long s;
+        do {
+            s = beginRead();
+            for (int control = 0; control < value.length; control++)
+                smoothing.target(control, valueNormal(control));
+        } while (!validate(s));
+        smoothing.advance(now);
+    }
+
+    FieldBinding binding(int control) {
+        return bindings[control];
+    }
+
+    FieldBinding padBinding(int pad) {
+        return padBindings[pad];
+    }
+
+    /**
+     * @return The value of the control with the precision of its high-resolution mode, according to its range.
+     */
+    double valueFine(int control) {
+        return valueAt(control, fine[control]);
+    }
+
+    float[] copyValues(float[] dst) {
+        if (dst == null || dst.length < value.length)
+            dst = new float[value.length];
+        read(dst, 0, null, null, null);
+        return dst;
+    }
+
+    /**
+     * Copies the values of all knobs and sliders into an array holding the values of several devices.
+     */
+    void copyValues(float[] dst, int offset) {
+        read(dst, offset, null, null, null);
+    }
+
+    int[] copyPositions(int[] dst) {
+        if (dst == null || dst.length < position.length)
+            dst = new int[position.length];
+        read(null, 0, dst, null, null);
+        return dst;
+    }
+
+    boolean[] copyPadValues(boolean[] dst) {
+        if (dst == null || dst.length < padValue.length)
+            dst = new boolean[padValue.length];
+        read(null, 0, null, null, dst);
+        return dst;
+    }
+
+    /**
+     * Copies the normalized positions of all knobs and sliders, and the values of all pads, at the same point in time.
+     */
+    void copyPreset(double[] fines, boolean[] pads) {
+        read(null, 0, null, fines, pads);
+    }
+
+    ControllerSnapshot snapshot() {
+        float[] values = new float[value.length];
+        int[] positions = new int[position.length];
+        boolean[] pads = new boolean[padValue.length];
+        long version = read(values, 0, positions, null, pads);
+        return new ControllerSnapshot(values, positions, pads, knobCount, version / 2);
+    }
+}
@@ -0,0 +1,14 @@
+package pLaunchControl;
+
+/**
+ * Receives notifications when either a knob, slider or pad has changed, without
+ * information of which control was changed.
+ * Register a listener with {@link MidiController#addControllerListener(ControllerListener)}.
+ */
+public interface ControllerListener {
+
+    /**
+     * Called when either a knob, slider or pad has changed.
+     */
+    void controllerChanged();
+}
@@ -0,0 +1,69 @@
+package pLaunchControl;
+
+/**
+ * The values of every knob, slider and pad of a controller at a single point in time,
+ * returned by {@link MidiDevice#snapshot()}. A snapshot never changes, so a sketch can read
+ * several controls during `draw()` without seeing some of them change in the middle of the frame.
+ */
+public final class ControllerSnapshot {
+
+    private final float[] values;
+    private final int[] positions;
+    private final boolean[] pads;
+    private final int knobCount;
+    private final long version;
+
+    ControllerSnapshot(float[] values, int[] positions, boolean[] pads, int knobCount, long version) {
+        this.values = values;
+        this.positions = positions;
+        this.pads = pads;
+        this.knobCount = knobCount;
+        this.version = version;
+    }
+
+    /**
+     * @return The value of the knob, according to its range.
+     */
+    public float value(KNOBS knob) {
+        return values[knob.code()];
+    }
+
+    /**
+     * @return The value of the slider, according to its range.
+     */
+    public float value(SLIDERS slider) {
+        return values[sliderIndex(slider)];
+    }
+
+    public boolean value(PADS pad) {
+        return pads[pad.code()];
+    }
+
+    /**
+     * @return The position of the knob, between 0 and 127.
+     */
+    public int position(KNOBS knob) {
+        return positions[knob.code()];
+    }
+
+    /**
+     * @return The position of the slider, between 0 and 127.
+     */
+    public int position(SLIDERS slider) {
+        return positions[sliderIndex(slider)];
+    }
+
+    /**
+     * @return A number increasing every time a control changes. Two snapshots of the same
+     * controller with the same version hold the same values.
+     */
+    public long version() {
+        return version;
+    }
+
+    private int sliderIndex(SLIDERS slider) {
+        if (knobCount == values.length)
+            throw new UnsupportedOperationException("Method not available. This device does not have sliders.");
+        return knobCount + slider.code();
+    }
+}
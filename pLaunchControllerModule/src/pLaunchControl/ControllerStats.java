@@ -0,0 +1,121 @@
+package pLaunchControl;
+
+/**
+ * The latencies of a controller since its statistics were enabled or reset, returned by
+ * {@link MidiController#getStats()}. Latencies are measured from the arrival of each MIDI message,
+ * see {@link LATENCY}, and given in milliseconds. A snapshot never changes.
+ */
+public final class ControllerStats {
+
+    private static final double[] PERCENTILES = {50, 99};
+
+    // per stage: p50, p99 and max, in nanoseconds
+    private final long[] latencies = new long[LATENCY.values().length * (PERCENTILES.length + 1)];
+    private final long eventCount;
+    private final float eventsPerSecond;
+    private final long droppedEvents;
+    private final float startupMillis;
+
+    ControllerStats(LatencyStats stats, long droppedEvents, float startupMillis) {
+        if (stats != null) {
+            int i = 0;
+            for (LatencyHistogram stage : stats.stages) {
+                for (double percentile : PERCENTILES)
+                    latencies[i++] = stage.percentile(percentile);
+                latencies[i++] = stage.max();
+            }
+            eventCount = stats.events();
+            eventsPerSecond = stats.eventsPerSecond();
+        } else {
+            eventCount = 0;
+            eventsPerSecond = 0;
+        }
+        this.droppedEvents = droppedEvents;
+        this.startupMillis = startupMillis;
+    }
+
+    private float millis(LATENCY stage, int column) {
+        return latencies[stage.ordinal() * (PERCENTILES.length + 1) + column] / 1e6f;
+    }
+
+    /**
+     * @return The median latency of the stage, in milliseconds.
+     */
+    public float p50(LATENCY stage) {
+        return millis(stage, 0);
+    }
+
+    /**
+     * @return The latency of the stage exceeded by 1% of the messages, in milliseconds.
+     */
+    public float p99(LATENCY stage) {
+        return millis(stage, 1);
+    }
+
+    /**
+     * @return The highest latency of the stage, in milliseconds.
+     */
+    public float max(LATENCY stage) {
+        return millis(stage, 2);
+    }
+
+    /**
+     * @return The median end-to-end latency, from the arrival of a message until its events returned, in milliseconds.
+     */
+    public float p50() {
+        return p50(LATENCY.DISPATCHED);
+    }
+
+    /**
+     * @return The end-to-end latency exceeded by 1% of the messages, in milliseconds.
+     */
+    public float p99() {
+        return p99(LATENCY.DISPATCHED);
+    }
+
+    /**
+     * @return The highest end-to-end latency, in milliseconds.
+     */
+    public float max() {
+        return max(LATENCY.DISPATCHED);
+    }
+
+    /**
+     * @return The number of knob, slider and pad messages received.
+     */
+    public long eventCount() {
+        return eventCount;
+    }
+
+    /**
+     * @return The number of knob, slider and pad messages received during the last second.
+     * Updated once per frame.
+     */
+    public float eventsPerSecond() {
+        return eventsPerSecond;
+    }
+
+    /**
+     * @return The number of events dropped because too many arrived between two frames, when events are queued.
+     */
+    public long droppedEvents() {
+        return droppedEvents;
+    }
+
+    /**
+     * @return The time taken to find the controller and connect to it, in milliseconds, or -1 if not connected.
+     */
+    public float startupMillis() {
+        return startupMillis;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("events/s %.0f  total %d  dropped %d%n", eventsPerSecond, eventCount, droppedEvents));
+        for (LATENCY stage : LATENCY.values())
+            text.append(String.format("%-10s p50 %.3f  p99 %.3f  max %.3f ms%n", stage.name().toLowerCase(), p50(stage), p99(stage), max(stage)));
+        text.append(String.format("startup %.1f ms", startupMillis));
+        return text.toString();
+    }
+}
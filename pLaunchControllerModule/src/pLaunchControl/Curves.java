@@ -0,0 +1,99 @@
+package pLaunchControl;
+
+import java.util.Arrays;
+
+/**
+ * The response curves of the knobs and sliders of a device, see {@link CURVE}. A curve maps the position
+ * of a control, normalized between 0 and 1, to its value, also normalized between 0 and 1.
+ * <p>Curves are compiled into lookup tables of values, for the minimum and maximum of the control, with an entry
+ * per position of the control: 128 entries, or 16384 for a control in paired high-resolution mode. Reading the value
+ * of a position is then a single array load, however expensive the curve, and values between two positions, from
+ * relative knobs, automation or presets, are interpolated between two entries. Tables are rebuilt when the curve,
+ * the range or the resolution of the control changes.</p>
+ */
+final class Curves {
+
+    static final int POSITIONS = 128;
+
+    /**
+     * The ratio between the ends of the range of an exponential curve whose range includes 0.
+     */
+    private static final double DEFAULT_RATIO = 1000;
+
+    private final CURVE[] curve;
+    private final float[][] points;
+
+    Curves(int controls) {
+        curve = new CURVE[controls];
+        points = new float[controls][];
+        Arrays.fill(curve, CURVE.LINEAR);
+    }
+
+    /**
+     * @param points The values of a {@link CURVE#SPLINE} at evenly spaced positions, normalized between 0 and 1.
+     */
+    void set(int control, CURVE curve, float[] points) {
+        if (curve == CURVE.SPLINE && (points == null || points.length < 2))
+            throw new IllegalArgumentException("LaunchControl Error: a spline needs at least 2 points.");
+        this.curve[control] = curve;
+        this.points[control] = curve == CURVE.SPLINE ? points.clone() : null;
+    }
+
+    CURVE curve(int control) {
+        return curve[control];
+    }
+
+    /**
+     * @param size {@link #POSITIONS}, or {@link HighResolution#MAX_FINE} + 1.
+     * @return The values of the control at each position, or null for a linear control.
+     */
+    float[] table(int control, int size, float min, float max) {
+        CURVE curve = this.curve[control];
+        if (curve == CURVE.LINEAR)
+            return null;
+        double ratio = min != 0 && max != 0 && (min > 0) == (max > 0) ? max / (double) min : DEFAULT_RATIO;
+        float[] table = new float[size];
+        for (int i = 0; i < size; i++) {
+            double x = i / (double) (size - 1);
+            table[i] = (float) (min + shape(curve, points[control], ratio, x) * (max - (double) min));
+        }
+        return table;
+    }
+
+    /**
+     * @return The normalized value of the curve at the normalized position x.
+     */
+    private static double shape(CURVE curve, float[] points, double ratio, double x) {
+        switch (curve) {
+            case EXPONENTIAL:
+                return exponential(ratio, x);
+            case LOGARITHMIC:
+                return 1 - exponential(ratio, 1 - x);
+            case S_CURVE:
+                return x * x * (3 - 2 * x);
+            case SPLINE:
+                return spline(points, x);
+            default:
+                return x;
+        }
+    }
+
+    private static double exponential(double ratio, double x) {
+        if (Math.abs(ratio - 1) < 1e-9)
+            return x;
+        return (Math.pow(ratio, x) - 1) / (ratio - 1);
+    }
+
+    /**
+     * A Catmull-Rom spline through evenly spaced points, clamped between 0 and 1.
+     */
+    private static double spline(float[] points, double x) {
+        int segments = points.length - 1;
+        double t = x * segments;
+        int i = Math.min((int) t, segments - 1);
+        t -= i;
+        double p0 = points[Math.max(i - 1, 0)], p1 = points[i], p2 = points[i + 1], p3 = points[Math.min(i + 2, segments)];
+        double y = p1 + 0.5 * t * (p2 - p0 + t * (2 * p0 - 5 * p1 + 4 * p2 - p3 + t * (3 * (p1 - p2) + p3 - p0)));
+        return Math.max(0, Math.min(1, y));
+    }
+}
@@ -0,0 +1,80 @@
+package pLaunchControl;
+
+import javax.sound.midi.spi.MidiDeviceProvider;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The list of MIDI devices of a provider, shared by all controllers of the process. Listing the devices
+ * and getting each of them can take hundreds of milliseconds on computers with many virtual ports, so
+ * the list is only requested once, and devices are only got when their name matches a controller.
+ * The list is refreshed when the {@link DeviceWatcher} sees it change, or when a controller is not found in it.
+ */
+final class DeviceCache {
+
+    private static final Map<MidiDeviceProvider, DeviceCache> CACHES = new WeakHashMap<>();
+
+    private final MidiDeviceProvider devices;
+    private javax.sound.midi.MidiDevice.Info[] infos;
+    private final Map<javax.sound.midi.MidiDevice.Info, javax.sound.midi.MidiDevice> opened = new IdentityHashMap<>();
+
+    private DeviceCache(MidiDeviceProvider devices) {
+        this.devices = devices;
+    }
+
+    static synchronized DeviceCache of(MidiDeviceProvider devices) {
+        return CACHES.computeIfAbsent(devices, DeviceCache::new);
+    }
+
+    /**
+     * @return True if the devices were already listed.
+     */
+    synchronized boolean listed() {
+        return infos != null;
+    }
+
+    /**
+     * @return The devices of the provider, listed when first requested.
+     */
+    synchronized javax.sound.midi.MidiDevice.Info[] infos() {
+        if (infos == null)
+            infos = devices.getDeviceInfo();
+        return infos;
+    }
+
+    /**
+     * @return The device, got from the provider when first requested.
+     */
+    synchronized javax.sound.midi.MidiDevice device(javax.sound.midi.MidiDevice.Info info) {
+        javax.sound.midi.MidiDevice device = opened.get(info);
+        if (device == null) {
+            device = devices.getDevice(info);
+            opened.put(info, device);
+        }
+        return device;
+    }
+
+    /**
+     * Replaces the list of devices, keeping the devices still listed.
+     */
+    synchronized void update(javax.sound.midi.MidiDevice.Info[] infos) {
+        Map<javax.sound.midi.MidiDevice.Info, javax.sound.midi.MidiDevice> kept = new IdentityHashMap<>();
+        for (javax.sound.midi.MidiDevice.Info info : infos) {
+            javax.sound.midi.MidiDevice device = opened.get(info);
+            if (device != null)
+                kept.put(info, device);
+        }
+        opened.clear();
+        opened.putAll(kept);
+        this.infos = infos;
+    }
+
+    /**
+     * Forgets the list of devices, so that it is requested again.
+     */
+    synchronized void invalidate() {
+        infos = null;
+        opened.clear();
+    }
+}
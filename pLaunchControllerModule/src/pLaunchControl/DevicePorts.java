@@ -0,0 +1,102 @@
+package pLaunchControl;
+
+import javax.sound.midi.spi.MidiDeviceProvider;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The MIDI input and output ports of one physical controller. A controller appears as two MIDI devices,
+ * an input having only transmitters and an output having only receivers, sharing the same name.
+ * When several identical controllers are connected, the n-th input with a given name is paired
+ * with the n-th output with the same name.
+ */
+final class DevicePorts {
+
+    final javax.sound.midi.MidiDevice input;
+    /**
+     * The output port, or null if the controller has none.
+     */
+    final javax.sound.midi.MidiDevice output;
+
+    /**
+     * The time taken to find the controller, in nanoseconds.
+     */
+    long discoveryNanos;
+
+    private DevicePorts(javax.sound.midi.MidiDevice input, javax.sound.midi.MidiDevice output) {
+        this.input = input;
+        this.output = output;
+    }
+
+    String name() {
+        return input.getDeviceInfo().getName();
+    }
+
+    /**
+     * Lists the controllers among the devices, in the order they are listed by the provider.
+     * The list of devices is cached; it is only requested again if no controller is found in it.
+     * @param suffixes The accepted ends of the device names.
+     */
+    static List<DevicePorts> discover(MidiDeviceProvider devices, boolean debug, String... suffixes) {
+        long start = System.nanoTime();
+        DeviceCache cache = DeviceCache.of(devices);
+        boolean cached = cache.listed();
+        List<DevicePorts> controllers = discover(cache, debug, suffixes);
+        if (controllers.isEmpty() && cached) {
+            // the controller may have been plugged in since the devices were listed
+            cache.invalidate();
+            controllers = discover(cache, debug, suffixes);
+        }
+        long time = System.nanoTime() - start;
+        for (DevicePorts ports : controllers)
+            ports.discoveryNanos = time;
+        return controllers;
+    }
+
+    private static List<DevicePorts> discover(DeviceCache cache, boolean debug, String[] suffixes) {
+        List<javax.sound.midi.MidiDevice> inputs = new ArrayList<>();
+        List<javax.sound.midi.MidiDevice> outputs = new ArrayList<>();
+        for (javax.sound.midi.MidiDevice.Info info : cache.infos()) {
+            if (!matches(info.getName(), suffixes)) {
+                if (debug)
+                    System.out.printf("Device: %s%n", info);
+                continue;
+            }
+            javax.sound.midi.MidiDevice device = cache.device(info);
+            if (debug)
+                System.out.printf("Device: %s \t Receivers: %d \t Transmitters: %d%n", info, device.getMaxReceivers(), device.getMaxTransmitters());
+            if (device.getMaxReceivers() == 0)
+                inputs.add(device);
+            else if (device.getMaxTransmitters() == 0)
+                outputs.add(device);
+        }
+
+        List<DevicePorts> controllers = new ArrayList<>(inputs.size());
+        for (javax.sound.midi.MidiDevice input : inputs) {
+            javax.sound.midi.MidiDevice output = null;
+            for (int i = 0; i < outputs.size(); i++) {
+                if (outputs.get(i).getDeviceInfo().getName().equals(input.getDeviceInfo().getName())) {
+                    output = outputs.remove(i);
+                    break;
+                }
+            }
+            controllers.add(new DevicePorts(input, output));
+        }
+        return controllers;
+    }
+
+    /**
+     * @return The first controller among the devices, or null if there is none.
+     */
+    static DevicePorts first(MidiDeviceProvider devices, boolean debug, String... suffixes) {
+        List<DevicePorts> controllers = discover(devices, debug, suffixes);
+        return controllers.isEmpty() ? null : controllers.get(0);
+    }
+
+    private static boolean matches(String name, String[] suffixes) {
+        for (String suffix : suffixes)
+            if (suffix != null && name.endsWith(suffix))
+                return true;
+        return false;
+    }
+}
@@ -0,0 +1,92 @@
+package pLaunchControl;
+
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.spi.MidiDeviceProvider;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Watches the list of MIDI devices from a background thread, so that a controller unplugged
+ * during a performance is reconnected as soon as it is plugged in again. The list is compared with
+ * the previous one using the names and identities of the devices, and the controller is only notified when the list
+ * changed, so watching an unchanged list does not open or query any device. The list is only ever read by the
+ * watcher thread, starting with the list the following checks compare with, so the caller never waits for it.
+ */
+final class DeviceWatcher implements Runnable {
+
+    static final int DEFAULT_PERIOD = 1000;
+
+    private final MidiController controller;
+    private final MidiDeviceProvider devices;
+    private final long periodNanos;
+    private final Thread thread;
+
+    private volatile boolean running = true;
+    private long signature;
+
+    /**
+     * @param controller The controller to notify when the list of devices changed.
+     * @param devices The provider of the MIDI devices.
+     * @param periodMillis The time between two checks of the list of devices, in milliseconds.
+     */
+    DeviceWatcher(MidiController controller, MidiDeviceProvider devices, int periodMillis) {
+        if (periodMillis < 1)
+            throw new IllegalArgumentException("The period of the device watcher must be at least 1 millisecond.");
+        this.controller = controller;
+        this.devices = devices;
+        this.periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+        this.thread = new Thread(this, "pLaunchControl device watcher");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Starts watching the list of devices, in a new thread.
+     */
+    void start() {
+        thread.start();
+    }
+
+    void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    @Override
+    public void run() {
+        try {
+            signature = signature(devices.getDeviceInfo());
+        } catch (RuntimeException e) {
+            // compared with no list, the first check notifies the controller
+        }
+        while (running) {
+            LockSupport.parkNanos(this, periodNanos);
+            if (!running)
+                break;
+            javax.sound.midi.MidiDevice.Info[] infos;
+            try {
+                infos = devices.getDeviceInfo();
+            } catch (RuntimeException e) {
+                continue;
+            }
+            long current = signature(infos);
+            if (current == signature)
+                continue;
+            signature = current;
+            DeviceCache.of(devices).update(infos);
+            try {
+                controller.devicesChanged(devices, infos);
+            } catch (MidiUnavailableException | RuntimeException e) {
+                System.err.println("LaunchControl Error: the controller could not be reconnected. Error message: " + e.getMessage());
+                // try again at the next check
+                signature = 0;
+            }
+        }
+    }
+
+    private static long signature(javax.sound.midi.MidiDevice.Info[] infos) {
+        long signature = infos.length;
+        for (javax.sound.midi.MidiDevice.Info info : infos)
+            signature = 31 * signature + info.getName().hashCode() * 31L + System.identityHashCode(info);
+        return signature;
+    }
+}
@@ -0,0 +1,112 @@
+package pLaunchControl;
+
+import java.util.Arrays;
+
+/**
+ * The relative mode of the knobs of a device, see {@link Knob#mode(KNOBMODE)}. A knob in relative mode sends
+ * increments instead of its position; each increment moves the value of the knob by a fraction of its range,
+ * multiplied when the knob is turned fast. The speed of the knob is measured from the time between its messages.
+ * Arrays are indexed by knob, and only used by the thread handling the messages of the device.
+ */
+final class Encoders {
+
+    // ordinals of KNOBMODE
+    static final byte ABSOLUTE = 0;
+    private static final byte BINARY_OFFSET = 1;
+    private static final byte TWOS_COMPLEMENT = 2;
+    private static final byte SIGNED_BIT = 3;
+
+    static final int DEFAULT_STEPS = 127;
+
+    /**
+     * The speed, in increments per second, at which an acceleration of 1 doubles the increments.
+     */
+    private static final float REFERENCE_SPEED = 50;
+    private static final float MAX_MULTIPLIER = 1000;
+
+    /**
+     * A knob without messages for this long, in nanoseconds, is assumed to have stopped.
+     */
+    private static final long STOPPED = 200_000_000L;
+
+    private final byte[] mode;
+    private final float[] acceleration;
+    private final int[] steps;
+    private final long[] time;
+    private final float[] speed;
+    private final byte[] direction;
+
+    Encoders(int knobs) {
+        mode = new byte[knobs];
+        acceleration = new float[knobs];
+        steps = new int[knobs];
+        time = new long[knobs];
+        speed = new float[knobs];
+        direction = new byte[knobs];
+        Arrays.fill(steps, DEFAULT_STEPS);
+    }
+
+    void mode(int knob, KNOBMODE mode) {
+        this.mode[knob] = (byte) mode.ordinal();
+    }
+
+    /**
+     * @param acceleration 0 for no acceleration.
+     */
+    void acceleration(int knob, float acceleration) {
+        this.acceleration[knob] = Math.max(0, acceleration);
+    }
+
+    /**
+     * @param steps The number of increments covering the whole range of the knob, without acceleration.
+     */
+    void steps(int knob, int steps) {
+        if (steps < 1)
+            throw new IllegalArgumentException("LaunchControl Error: the number of steps of a knob must be positive.");
+        this.steps[knob] = steps;
+    }
+
+    /**
+     * @return True if the control is a knob in relative mode.
+     */
+    boolean relative(int control) {
+        return control < mode.length && mode[control] != ABSOLUTE;
+    }
+
+    /**
+     * @return The increment sent by a knob in relative mode, in steps.
+     */
+    int decode(int knob, int data) {
+        switch (mode[knob]) {
+            case BINARY_OFFSET:
+                return data - 64;
+            case TWOS_COMPLEMENT:
+                return data < 64 ? data : data - 128;
+            case SIGNED_BIT:
+                return (data & 0x40) == 0 ? data : -(data & 0x3F);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @param now The arrival time of the increment, in nanoseconds.
+     * @return The change of the value of the knob, normalized to its range, accelerated according to the speed of the knob.
+     */
+    double increment(int knob, int data, long now) {
+        int increment = decode(knob, data);
+        if (increment == 0)
+            return 0;
+        long elapsed = now - time[knob];
+        time[knob] = now;
+        byte direction = (byte) Integer.signum(increment);
+        // a knob turned back starts slowly, for fine adjustments after a fast move
+        float rate = elapsed <= 0 || elapsed > STOPPED || direction != this.direction[knob] ? 0 : Math.abs(increment) * 1e9f / elapsed;
+        this.direction[knob] = direction;
+        // average with the previous speed, so that a single short interval does not jump
+        speed[knob] = rate == 0 ? 0 : (speed[knob] + rate) / 2;
+        float relativeSpeed = speed[knob] / REFERENCE_SPEED;
+        float multiplier = Math.min(MAX_MULTIPLIER, 1 + acceleration[knob] * relativeSpeed * relativeSpeed);
+        return increment * multiplier / steps[knob];
+    }
+}
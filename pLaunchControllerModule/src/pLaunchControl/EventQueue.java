@@ -0,0 +1,121 @@
+package pLaunchControl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, lock-free queue of decoded controller events, written by the MIDI receiver
+ * thread and read by the Processing animation thread. Also used by the {@link SharedDispatcher}
+ * to pass raw messages from the receiver thread of each controller to the dispatch thread.
+ * The queue supports exactly one producer and one consumer. Events are stored as primitive
+ * records in a ring buffer, so that neither side allocates or blocks.
+ */
+final class EventQueue {
+
+    static final int DEFAULT_CAPACITY = 1024;
+
+    private final int[] records;
+    private final long[] times;
+    private final int mask;
+
+    /**
+     * The time stamp of the record returned by the last {@link #poll()}, only used by the consumer.
+     */
+    private long lastTime;
+
+    /**
+     * Position of the next record to read, only written by the consumer.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Position of the next record to write, only written by the producer.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    private volatile long dropped;
+
+    /**
+     * @param capacity Maximum number of events waiting to be read, rounded up to a power of two.
+     */
+    EventQueue(int capacity) {
+        int size = size(capacity);
+        records = new int[size];
+        times = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * @return The capacity rounded up to a power of two.
+     */
+    static int size(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30)
+            throw new IllegalArgumentException("The capacity of the event queue must be between 1 and 2^30.");
+        int size = Integer.highestOneBit(capacity);
+        return size < capacity ? size << 1 : size;
+    }
+
+    /**
+     * Adds a record to the queue. Called by the producer thread only.
+     * @param record A non-negative record.
+     * @return False if the queue is full, in which case the record is dropped.
+     */
+    boolean offer(int record) {
+        return offer(record, 0);
+    }
+
+    /**
+     * Adds a record to the queue, with the time it arrived. Called by the producer thread only.
+     * @param time The time stamp of the record, returned by {@link #lastTime()} once the record is polled.
+     * @return False if the queue is full, in which case the record is dropped.
+     */
+    boolean offer(int record, long time) {
+        long t = tail.get();
+        if (t - head.get() == records.length) {
+            dropped++;
+            return false;
+        }
+        records[(int) t & mask] = record;
+        times[(int) t & mask] = time;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Removes the oldest record from the queue. Called by the consumer thread only.
+     * @return The record, or -1 if the queue is empty.
+     */
+    int poll() {
+        long h = head.get();
+        if (h == tail.get())
+            return -1;
+        int record = records[(int) h & mask];
+        lastTime = times[(int) h & mask];
+        head.lazySet(h + 1);
+        return record;
+    }
+
+    /**
+     * @return The time stamp of the record returned by the last {@link #poll()}, or 0 if none was given.
+     */
+    long lastTime() {
+        return lastTime;
+    }
+
+    /**
+     * @return The number of records waiting to be read.
+     */
+    int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    int capacity() {
+        return records.length;
+    }
+
+    /**
+     * @return The number of records dropped because the queue was full.
+     */
+    long dropped() {
+        return dropped;
+    }
+}
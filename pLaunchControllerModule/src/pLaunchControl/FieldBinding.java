@@ -0,0 +1,273 @@
+package pLaunchControl;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * A variable in the sketch attached to a {@link Knob}, {@link Slider} or {@link Pad}.
+ * The variable is looked up only once, when the binding is created, and is written afterwards
+ * through a cached {@link MethodHandle}, so that updates coming from the MIDI controller
+ * do not repeat the reflective lookup, nor allocate.
+ * <p>The variable is a path from the sketch, made of field names separated by dots, and of array indexes:
+ * {@code radius}, {@code position.x}, {@code sizes[3]}, {@code particles[0].speed}, or the name of a method taking
+ * a single argument, such as {@code shape.setRadius}. The path is compiled into a single method handle, reading each
+ * intermediate object or array on every write, so that the sketch can replace them, then writing the last field,
+ * array element or method argument. Values are converted to the type of the variable by the handle: floats are
+ * rounded to integer variables, and pads write 1 or 0 to numeric variables, so no value is boxed.</p>
+ */
+final class FieldBinding {
+
+    private static final MethodType FLOAT_SETTER = MethodType.methodType(void.class, Object.class, float.class);
+    private static final MethodType BOOLEAN_SETTER = MethodType.methodType(void.class, Object.class, boolean.class);
+    private static final MethodType INT_SETTER = MethodType.methodType(void.class, Object.class, int.class);
+
+    private static final MethodHandle ROUND;
+    private static final MethodHandle NON_ZERO;
+
+    static {
+        try {
+            ROUND = MethodHandles.lookup().findStatic(Math.class, "round", MethodType.methodType(int.class, float.class));
+            NON_ZERO = MethodHandles.lookup().findStatic(FieldBinding.class, "nonZero", MethodType.methodType(boolean.class, int.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Object target;
+    private final String fieldName;
+    private final MethodHandle setter;
+
+    private FieldBinding(Object target, String fieldName, MethodHandle setter) {
+        this.target = target;
+        this.fieldName = fieldName;
+        this.setter = setter;
+    }
+
+    /**
+     * Resolves a numeric variable in the target object: a float, or a double, int, long, short or byte.
+     * @param target The object declaring the variable, usually the sketch.
+     * @param fieldName The path of the variable.
+     * @return The binding, or null if fieldName is null.
+     */
+    static FieldBinding forFloat(Object target, String fieldName) {
+        return bind(target, fieldName, FLOAT_SETTER);
+    }
+
+    /**
+     * Resolves a boolean variable in the target object, or a numeric variable set to 1 or 0.
+     * @param target The object declaring the variable, usually the sketch.
+     * @param fieldName The path of the variable.
+     * @return The binding, or null if fieldName is null.
+     */
+    static FieldBinding forBoolean(Object target, String fieldName) {
+        return bind(target, fieldName, BOOLEAN_SETTER);
+    }
+
+    /**
+     * Resolves a numeric variable in the target object, set to the state of a pad in {@link PADMODE#CYCLE} mode,
+     * or a boolean variable, set to true in every state but the first.
+     * @param target The object declaring the variable, usually the sketch.
+     * @param fieldName The path of the variable.
+     * @return The binding, or null if fieldName is null.
+     */
+    static FieldBinding forInt(Object target, String fieldName) {
+        return bind(target, fieldName, INT_SETTER);
+    }
+
+    private static boolean nonZero(int value) {
+        return value != 0;
+    }
+
+    private static FieldBinding bind(Object target, String fieldName, MethodType setterType) {
+        if (fieldName == null || target == null)
+            return null;
+
+        try {
+            MethodHandle setter = compile(target.getClass(), fieldName, setterType.parameterType(1));
+            return new FieldBinding(target, fieldName, setter.asType(setterType));
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalArgumentException("LaunchControl Error: variable " + fieldName + " can not be attached. Error message: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Compiles the path of a variable into a method handle writing it.
+     * @return A method handle of type (Object, valueType)void.
+     */
+    private static MethodHandle compile(Class<?> root, String path, Class<?> valueType) throws ReflectiveOperationException {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        // reads the object holding the current segment, from the root object
+        MethodHandle getter = MethodHandles.identity(Object.class).asType(MethodType.methodType(root, Object.class));
+        Class<?> type = root;
+        String[] segments = path.trim().split("\\s*\\.\\s*");
+        for (int s = 0; s < segments.length; s++) {
+            String segment = segments[s];
+            int bracket = segment.indexOf('[');
+            String name = (bracket < 0 ? segment : segment.substring(0, bracket)).trim();
+            int[] indexes = indexes(path, bracket < 0 ? "" : segment.substring(bracket));
+            boolean last = s == segments.length - 1;
+
+            if (last && indexes.length == 0) {
+                MethodHandle setter;
+                Field field = findField(type, name);
+                if (field != null) {
+                    if (Modifier.isFinal(field.getModifiers()))
+                        throw new IllegalArgumentException("LaunchControl Error: variable " + path + " is final and can not be attached.");
+                    field.setAccessible(true);
+                    setter = dropReceiver(lookup.unreflectSetter(field), field.getModifiers(), type);
+                } else {
+                    Method method = findSetter(type, name.endsWith("()") ? name.substring(0, name.length() - 2) : name, valueType);
+                    if (method == null)
+                        throw new IllegalArgumentException("LaunchControl Error: variable not found in the sketch: " + path + ".");
+                    method.setAccessible(true);
+                    setter = dropReceiver(lookup.unreflect(method), method.getModifiers(), type);
+                }
+                Class<?> variableType = setter.type().parameterType(1);
+                setter = setter.asType(MethodType.methodType(void.class, type, variableType));
+                return finish(getter, setter, variableType, valueType, path);
+            }
+
+            Field field = findField(type, name);
+            if (field == null)
+                throw new IllegalArgumentException("LaunchControl Error: variable not found in the sketch: " + path + ".");
+            field.setAccessible(true);
+            getter = MethodHandles.filterReturnValue(getter, dropReceiver(lookup.unreflectGetter(field), field.getModifiers(), type));
+            type = field.getType();
+
+            for (int i = 0; i < indexes.length; i++) {
+                if (!type.isArray())
+                    throw new IllegalArgumentException("LaunchControl Error: variable " + path + " is not an array.");
+                if (last && i == indexes.length - 1) {
+                    MethodHandle setter = MethodHandles.insertArguments(MethodHandles.arrayElementSetter(type), 1, indexes[i]);
+                    return finish(getter, setter, type.getComponentType(), valueType, path);
+                }
+                getter = MethodHandles.filterReturnValue(getter,
+                        MethodHandles.insertArguments(MethodHandles.arrayElementGetter(type), 1, indexes[i]));
+                type = type.getComponentType();
+            }
+        }
+        throw new IllegalArgumentException("LaunchControl Error: variable not found in the sketch: " + path + ".");
+    }
+
+    /**
+     * Makes the handle of a static field or method take, and ignore, the object holding it, like an instance member.
+     */
+    private static MethodHandle dropReceiver(MethodHandle handle, int modifiers, Class<?> type) {
+        return Modifier.isStatic(modifiers) ? MethodHandles.dropArguments(handle, 0, type) : handle;
+    }
+
+    /**
+     * Chains the reading of the object holding the variable, the conversion of the value, and the writing of the variable.
+     * @param setter A method handle of type (Holder, variableType)void.
+     */
+    private static MethodHandle finish(MethodHandle getter, MethodHandle setter, Class<?> variableType, Class<?> valueType, String path) {
+        MethodHandle convert = converter(valueType, variableType);
+        if (convert == null)
+            throw new IllegalArgumentException("LaunchControl Error: variable " + path + " of type " + variableType.getSimpleName()
+                    + " can not be attached to a " + (valueType == float.class ? "knob or slider" : "pad") + ".");
+        return MethodHandles.filterArguments(MethodHandles.filterArguments(setter, 1, convert), 0, getter);
+    }
+
+    /**
+     * @return A method handle converting a value of the control to the type of the variable, or null if it can not be converted.
+     */
+    private static MethodHandle converter(Class<?> valueType, Class<?> variableType) {
+        MethodHandle identity = MethodHandles.identity(valueType);
+        if (variableType == valueType)
+            return identity;
+        if (valueType == int.class && variableType == boolean.class)
+            return NON_ZERO;
+        if (!variableType.isPrimitive() || variableType == boolean.class || variableType == char.class)
+            return null;
+        if (valueType == float.class && variableType != double.class)
+            // integer variables take the closest integer
+            identity = ROUND;
+        return MethodHandles.explicitCastArguments(identity, MethodType.methodType(variableType, valueType));
+    }
+
+    /**
+     * Parses the indexes following the name of a field, such as {@code [2][0]}.
+     */
+    private static int[] indexes(String path, String brackets) {
+        String[] parts = brackets.trim().isEmpty() ? new String[0] : brackets.trim().split("\\s*\\]\\s*");
+        int[] indexes = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i].trim();
+            if (!part.startsWith("["))
+                throw new IllegalArgumentException("LaunchControl Error: invalid variable " + path + ".");
+            try {
+                indexes[i] = Integer.parseInt(part.substring(1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("LaunchControl Error: invalid array index in variable " + path + ".");
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * Looks up a field declared in the given class, or in any of its superclasses.
+     */
+    static Field findField(Class<?> type, String fieldName) {
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            try {
+                return c.getDeclaredField(fieldName);
+            } catch (NoSuchFieldException e) {
+                // keep looking in the superclass
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Looks up a method taking a single primitive argument, declared in the given class or in any of its superclasses,
+     * preferring a method taking the type of the values of the control when the method is overloaded.
+     */
+    static Method findSetter(Class<?> type, String methodName, Class<?> valueType) {
+        Method found = null;
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            for (Method method : c.getDeclaredMethods()) {
+                if (!method.getName().equals(methodName) || method.getParameterCount() != 1 || !method.getParameterTypes()[0].isPrimitive())
+                    continue;
+                if (method.getParameterTypes()[0] == valueType)
+                    return method;
+                if (found == null)
+                    found = method;
+            }
+        }
+        return found;
+    }
+
+    void setFloat(float value) {
+        try {
+            setter.invokeExact(target, value);
+        } catch (Throwable e) {
+            System.err.printf("LaunchControl Error: It was not possible to set the value of the variable %s. Error message: %s%n", fieldName, e.getMessage());
+        }
+    }
+
+    void setBoolean(boolean value) {
+        try {
+            setter.invokeExact(target, value);
+        } catch (Throwable e) {
+            System.err.printf("LaunchControl Error: It was not possible to set the value of the variable %s. Error message: %s%n", fieldName, e.getMessage());
+        }
+    }
+
+    void setInt(int value) {
+        try {
+            setter.invokeExact(target, value);
+        } catch (Throwable e) {
+            System.err.printf("LaunchControl Error: It was not possible to set the value of the variable %s. Error message: %s%n", fieldName, e.getMessage());
+        }
+    }
+
+    String fieldName() {
+        return fieldName;
+    }
+}
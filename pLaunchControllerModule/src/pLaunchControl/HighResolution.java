@@ -0,0 +1,148 @@
+package pLaunchControl;
+
+/**
+ * The high-resolution mode of the knobs and sliders of a device, see {@link Knob#highResolution(int)}.
+ * <p>In paired mode, a user template sends the 14-bit position of a control as two control changes:
+ * the most significant 7 bits on the controller of the control, then the least significant 7 bits
+ * on a second controller. The receiver keeps the first half until the second one arrives.</p>
+ * <p>In estimated mode, for factory templates, the position between two steps of the control is estimated
+ * from the speed of the control: each message tells the step the control just entered, and until the next
+ * message, the control is assumed to keep moving at the speed measured between the last two messages,
+ * without leaving the step. The estimate is updated once per frame.</p>
+ * <p>Arrays are indexed like {@link ControlState}, and written under its sequence lock, except the
+ * pending most significant bits, only used by the receiver thread.</p>
+ */
+final class HighResolution {
+
+    static final byte OFF = 0;
+    static final byte PAIRED = 1;
+    static final byte ESTIMATED = 2;
+
+    static final int MAX_FINE = (1 << 14) - 1;
+
+    private static final double MAX_POSITION = 127;
+
+    /**
+     * A control without messages for this long, in nanoseconds, is assumed to have stopped.
+     */
+    private static final long STOPPED = 100_000_000L;
+
+    private final byte[] mode;
+
+    /**
+     * For each controller number, 1 + the control whose least significant bits it sends, or 0.
+     */
+    private final byte[] lsbControl = new byte[128];
+    private final int[] msb;
+
+    private final double[] anchor;
+    private final double[] velocity;
+    private final long[] time;
+
+    private volatile boolean paired, estimated;
+
+    HighResolution(int controls) {
+        mode = new byte[controls];
+        msb = new int[controls];
+        anchor = new double[controls];
+        velocity = new double[controls];
+        time = new long[controls];
+    }
+
+    /**
+     * @param lsbController The controller number sending the least significant bits, for {@link #PAIRED}.
+     */
+    synchronized void configure(int control, byte mode, int lsbController) {
+        for (int i = 0; i < lsbControl.length; i++)
+            if (lsbControl[i] == control + 1)
+                lsbControl[i] = 0;
+        this.mode[control] = mode;
+        if (mode == PAIRED)
+            lsbControl[lsbController & 0x7F] = (byte) (control + 1);
+        boolean paired = false, estimated = false;
+        for (byte m : this.mode) {
+            paired |= m == PAIRED;
+            estimated |= m == ESTIMATED;
+        }
+        this.paired = paired;
+        this.estimated = estimated;
+    }
+
+    byte mode(int control) {
+        return mode[control];
+    }
+
+    boolean paired() {
+        return paired;
+    }
+
+    boolean estimated() {
+        return estimated;
+    }
+
+    // ****** PAIRED ****** //
+
+    /**
+     * Keeps the most significant bits of a control until its least significant bits arrive.
+     */
+    void msb(int control, int msb) {
+        this.msb[control] = msb;
+    }
+
+    /**
+     * @return The control whose least significant bits are sent by the controller, or -1.
+     */
+    int lsbControl(int controller) {
+        return lsbControl[controller & 0x7F] - 1;
+    }
+
+    /**
+     * @return The 14-bit position of the control, completed by its least significant bits.
+     */
+    int position(int control, int lsb) {
+        return msb[control] << 7 | lsb & 0x7F;
+    }
+
+    // ****** ESTIMATED ****** //
+
+    /**
+     * Called when a control in estimated mode entered a new step.
+     */
+    void moved(int control, int previous, int position, long now) {
+        int steps = position - previous;
+        long elapsed = now - time[control];
+        if (steps == 0) {
+            anchor[control] = position;
+            velocity[control] = 0;
+        } else {
+            // the control just crossed the edge between the two steps
+            anchor[control] = position - 0.5 * Math.signum(steps);
+            velocity[control] = time[control] == 0 || elapsed > STOPPED ? 0 : steps / (double) elapsed;
+        }
+        time[control] = now;
+    }
+
+    /**
+     * Called when a control in estimated mode was set to a position without a message, for instance by a
+     * preset or a takeover: the control is assumed to stand still there until its next message.
+     */
+    void placed(int control, double position) {
+        anchor[control] = position;
+        velocity[control] = 0;
+    }
+
+    /**
+     * Estimates the position of the controls in estimated mode.
+     * @param fine The estimated positions, normalized between 0 and 1.
+     */
+    void estimate(long now, int[] position, double[] fine) {
+        for (int control = 0; control < mode.length; control++) {
+            if (mode[control] != ESTIMATED)
+                continue;
+            double estimate = anchor[control] + velocity[control] * (now - time[control]);
+            double low = Math.max(0, position[control] - 0.5);
+            double high = Math.min(MAX_POSITION, position[control] + 0.5);
+            fine[control] = Math.max(low, Math.min(high, estimate)) / MAX_POSITION;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package pLaunchControl;
+
+/**
+ * How a knob sends its movements. Knobs of the factory templates send their absolute position;
+ * endless encoders, or knobs of user templates set to a relative mode, send increments instead,
+ * encoded in one of the relative modes. See {@link Knob#mode(KNOBMODE)}.
+ */
+public enum KNOBMODE {
+
+    /**
+     * The knob sends its position, between 0 and 127. This is the default.
+     */
+    ABSOLUTE,
+    /**
+     * The knob sends 64 plus the increment: 65 for one step clockwise, 63 for one step counter-clockwise.
+     */
+    RELATIVE_BINARY_OFFSET,
+    /**
+     * The knob sends the increment in two's complement: 1 for one step clockwise, 127 for one step counter-clockwise.
+     */
+    RELATIVE_TWOS_COMPLEMENT,
+    /**
+     * The knob sends the size of the increment, plus 64 when turned counter-clockwise:
+     * 1 for one step clockwise, 65 for one step counter-clockwise.
+     */
+    RELATIVE_SIGNED_BIT
+}
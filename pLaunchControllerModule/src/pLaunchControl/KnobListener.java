@@ -0,0 +1,14 @@
+package pLaunchControl;
+
+/**
+ * Receives notifications when a knob changes position.
+ * Register a listener with {@link MidiController#addKnobListener(KnobListener)}.
+ */
+public interface KnobListener {
+
+    /**
+     * Called when a knob has changed.
+     * @param knob The knob that was changed.
+     */
+    void knobChanged(KNOBS knob);
+}
@@ -0,0 +1,22 @@
+package pLaunchControl;
+
+/**
+ * The stages of handling a controller message, each measured from the arrival of the message.
+ * See {@link MidiController#getStats()}.
+ */
+public enum LATENCY {
+
+    /**
+     * The message was decoded into a knob, slider or pad.
+     */
+    DECODED,
+    /**
+     * The value of the control, and the variable attached to it, were updated.
+     */
+    WRITTEN,
+    /**
+     * The events of the sketch, and the listeners, returned. This is the end-to-end latency. When events
+     * are queued or coalesced, it includes the time waiting for the next frame.
+     */
+    DISPATCHED
+}
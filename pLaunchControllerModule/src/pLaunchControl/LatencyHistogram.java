@@ -0,0 +1,98 @@
+package pLaunchControl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in nanoseconds, with buckets growing exponentially like an HdrHistogram:
+ * values are recorded with a precision of about 3%, from one nanosecond up to several minutes, in a
+ * fixed array of counters. Recording is lock-free and does not allocate, so it can be done in the
+ * thread delivering the MIDI messages while the sketch reads percentiles.
+ */
+final class LatencyHistogram {
+
+    /**
+     * Number of buckets for each power of two, which sets the precision of the recorded values.
+     */
+    private static final int SUB_BUCKETS = 32;
+    private static final int SUB_BITS = 5;
+
+    /**
+     * The highest recorded value, about 9 minutes. Higher values are recorded as this value.
+     */
+    private static final long MAX_VALUE = (1L << 39) - 1;
+
+    private static final int BUCKETS = index(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Values below twice {@link #SUB_BUCKETS} have a bucket each; above, each power of two is split
+     * into {@link #SUB_BUCKETS} buckets.
+     */
+    private static int index(long value) {
+        if (value < 2 * SUB_BUCKETS)
+            return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * @return The highest value recorded in the bucket.
+     */
+    private static long highestValue(int index) {
+        if (index < 2 * SUB_BUCKETS)
+            return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long low = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return low + (1L << shift) - 1;
+    }
+
+    void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        else if (nanos > MAX_VALUE)
+            nanos = MAX_VALUE;
+        counts.incrementAndGet(index(nanos));
+        total.incrementAndGet();
+        long m;
+        while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos))
+            Thread.onSpinWait();
+    }
+
+    long count() {
+        return total.get();
+    }
+
+    long max() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile Between 0 and 100.
+     * @return The value below which the given percentage of the recorded values fall, or 0 if no value was recorded.
+     */
+    long percentile(double percentile) {
+        long count = total.get();
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return Math.min(highestValue(i), max.get());
+        }
+        // values recorded while counting
+        return max.get();
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++)
+            counts.set(i, 0);
+        total.set(0);
+        max.set(0);
+    }
+}
@@ -0,0 +1,112 @@
+package pLaunchControl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the time between the arrival of each controller message and the moments its control is decoded,
+ * its value written and its events dispatched, see {@link LATENCY}. Messages are stamped with
+ * {@link System#nanoTime()} on arrival; the time stamp given by the MIDI driver is not used, as it counts
+ * from the opening of the device rather than in the clock of the sketch.
+ */
+final class LatencyStats {
+
+    final LatencyHistogram[] stages = new LatencyHistogram[LATENCY.values().length];
+    private final AtomicLong events = new AtomicLong();
+
+    // events per second, updated once per frame by the animation thread
+    private long windowStart;
+    private long windowEvents;
+    private volatile float eventsPerSecond;
+
+    /**
+     * The message being dispatched by a thread. Messages are dispatched by the thread receiving them, and by the
+     * animation thread when events are queued or coalesced, at the same time, so each thread has its own.
+     */
+    private static final class Dispatch {
+        boolean dispatching;
+        long arrival;
+        boolean written;
+    }
+
+    private final ThreadLocal<Dispatch> dispatch = ThreadLocal.withInitial(Dispatch::new);
+
+    LatencyStats() {
+        for (int i = 0; i < stages.length; i++)
+            stages[i] = new LatencyHistogram();
+    }
+
+    /**
+     * Called once the message was decoded into a control.
+     */
+    void decoded(long arrival) {
+        events.incrementAndGet();
+        stages[LATENCY.DECODED.ordinal()].record(System.nanoTime() - arrival);
+    }
+
+    /**
+     * Called before the control of a message is updated, possibly in another thread than
+     * the one which received the message, when events are queued.
+     */
+    void beginDispatch(long arrival) {
+        Dispatch dispatch = this.dispatch.get();
+        dispatch.dispatching = true;
+        dispatch.arrival = arrival;
+        dispatch.written = false;
+    }
+
+    /**
+     * Called before the first event of the control is triggered, once its value was written.
+     * Ignored for events triggered by the sketch, such as {@link MidiDevice#setPad(PADS, boolean)}.
+     */
+    void written() {
+        Dispatch dispatch = this.dispatch.get();
+        if (!dispatch.dispatching || dispatch.written)
+            return;
+        dispatch.written = true;
+        stages[LATENCY.WRITTEN.ordinal()].record(System.nanoTime() - dispatch.arrival);
+    }
+
+    /**
+     * Called once the events of the control returned. Messages which did not change the control,
+     * and so triggered no events, are not recorded.
+     */
+    void endDispatch() {
+        Dispatch dispatch = this.dispatch.get();
+        if (!dispatch.dispatching)
+            return;
+        dispatch.dispatching = false;
+        if (dispatch.written)
+            stages[LATENCY.DISPATCHED.ordinal()].record(System.nanoTime() - dispatch.arrival);
+    }
+
+    /**
+     * Updates the number of events per second, at most once per second.
+     */
+    void tick(long now) {
+        if (windowStart == 0) {
+            windowStart = now;
+            windowEvents = events.get();
+        } else if (now - windowStart >= 1_000_000_000L) {
+            long count = events.get();
+            eventsPerSecond = (count - windowEvents) * 1e9f / (now - windowStart);
+            windowStart = now;
+            windowEvents = count;
+        }
+    }
+
+    long events() {
+        return events.get();
+    }
+
+    float eventsPerSecond() {
+        return eventsPerSecond;
+    }
+
+    void reset() {
+        for (LatencyHistogram stage : stages)
+            stage.reset();
+        events.set(0);
+        windowStart = 0;
+        eventsPerSecond = 0;
+    }
+}
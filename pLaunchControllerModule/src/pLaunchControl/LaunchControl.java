@@ -1,12 +1,10 @@
 package pLaunchControl;
 
 import processing.core.PApplet;
-import uk.co.xfactorylibrarians.coremidi4j.CoreMidiDeviceProvider;
 
 import javax.sound.midi.MidiMessage;
-import javax.sound.midi.MidiSystem;
 import javax.sound.midi.MidiUnavailableException;
-import java.lang.reflect.Method;
+import javax.sound.midi.spi.MidiDeviceProvider;
 
 import static processing.core.PApplet.println;
 
@@ -39,11 +37,8 @@ import static processing.core.PApplet.println;
  */
 public class LaunchControl extends MidiController implements MidiDevice {
     public static final String DEVICE_NAME_SUFFIX = "Launch Control";
-    Method controllerChangedEventMethod, knobChangedEventMethod, padChangedEventMethod;
-    private static final String controlChangedEventName = "LaunchControlChanged";
-    private static final String knobChangedEventName = "LaunchControlKnobChanged";
-    private static final String padChangedEventName = "LaunchControlPadChanged";
-    private PADMODE padMode;
+    static final ControlLayout LAYOUT = ControlLayout.LAUNCH_CONTROL;
+    private PADMODE padMode = PADMODE.TOGGLE;
 
     private static final int KNOB_COUNT = 16;
     private static final int PAD_COUNT = 8;
@@ -51,9 +46,6 @@ public class LaunchControl extends MidiController implements MidiDevice {
     private final Pad[] padValues = new Pad[PAD_COUNT];
 
 
-    javax.sound.midi.MidiDevice.Info[] infoList;
-    LaunchControlDeviceReceiver receiver;
-
     /***
      * Returns the {@link Knob} object for one of the knobs in the controller.
      * @param knob The knob reference to locate.
@@ -78,9 +70,7 @@ public class LaunchControl extends MidiController implements MidiDevice {
 
 
     public void setKnobPosition(KNOBS knob, int position) {
-        int curPosition = knobValues[knob.code()].position();
-        int newPosition = knobValues[knob.code()].position(position).position();
-        if (newPosition != curPosition) {
+        if (knobValues[knob.code()].move(position)) {
             midiLaunchControlChanged();
             knobChanged(knob);
         }
@@ -125,84 +115,112 @@ public class LaunchControl extends MidiController implements MidiDevice {
     }
 
 
+    /***
+     * Connects to a controller provided by the given devices, for instance a {@link LoopbackDevice}.
+     * @param parent The sketch.
+     * @param devices The provider of the MIDI devices to look the controller up in.
+     */
+    public LaunchControl(PApplet parent, MidiDeviceProvider devices) throws MidiUnavailableException {
+        this(parent, false, null, devices);
+    }
+
     public LaunchControl(PApplet parent, boolean debug, String deviceName) throws MidiUnavailableException {
-        super(parent, debug);
-        for (int i = 0; i < KNOB_COUNT; i++) {
-            knobValues[i] = new Knob(i, parent);
-        }
-        for (int i = 0; i < PAD_COUNT; i++) {
-            padValues[i] = new Pad(i, parent);
-        }
-        infoList = CoreMidiDeviceProvider.getMidiDeviceInfo();
-        for (javax.sound.midi.MidiDevice.Info info : infoList) {
-            javax.sound.midi.MidiDevice device = MidiSystem.getMidiDevice(info);
-            if (this.debug)
-                System.out.printf("Device: %s \t Receivers: %d \t Transmitters: %d\n", info, device.getMaxReceivers(), device.getMaxTransmitters());
-            if ((deviceName != null && info.getName().endsWith(deviceName)) || info.getName().endsWith(DEVICE_NAME_SUFFIX)) {
-                if (device.getMaxReceivers() == 0) {
-                    deviceIn = device;
-                    println("Connected to MIDI Input.");
-                } else if (device.getMaxTransmitters() == 0) {
-                    println("Connected to MIDI Output.");
-                    deviceOut = device;
-                }
-            }
-        }
+        this(parent, debug, deviceName, SystemMidiDevices.INSTANCE);
+    }
 
+    /***
+     * @param parent The sketch.
+     * @param debug True to print debug messages.
+     * @param deviceName The end of the name of the device, or null to use {@link #DEVICE_NAME_SUFFIX}.
+     * @param devices The provider of the MIDI devices to look the controller up in.
+     */
+    public LaunchControl(PApplet parent, boolean debug, String deviceName, MidiDeviceProvider devices) throws MidiUnavailableException {
+        this(parent, debug, DevicePorts.first(devices, debug, deviceName, DEVICE_NAME_SUFFIX), null);
+        watchable(devices, deviceName, DEVICE_NAME_SUFFIX);
         if (deviceIn == null) {
             if (deviceName == null)
                 System.out.printf("A device with name ending with %s was not detected.\n", DEVICE_NAME_SUFFIX);
             else
                 System.out.printf("A device with name you provided was not detected.\nCheck the device name: %s \n", deviceName);
-            return;
         }
+    }
 
-        try {
-            controllerChangedEventMethod =
-                    parent.getClass().getMethod(controlChangedEventName);
-        } catch (Exception e) {
-            // no such method, or an error, which is fine, just ignore
-        }
+    /***
+     * Returns immediately, and looks the controller up and connects to it in a background thread,
+     * so that `setup()` is not delayed while the MIDI devices are listed. Controls can be configured
+     * and attached to variables meanwhile; see {@link #isConnected()}.
+     * @param parent The sketch.
+     * @param onConnected Called once the controller is connected, or null.
+     */
+    public LaunchControl(PApplet parent, ConnectionListener onConnected) throws MidiUnavailableException {
+        this(parent, SystemMidiDevices.INSTANCE, onConnected);
+    }
 
-        try {
-            knobChangedEventMethod =
-                    parent.getClass().getMethod(knobChangedEventName, KNOBS.class);
-        } catch (Exception e) {
-            // no such method, or an error, which is fine, just ignore
-        }
+    /***
+     * Returns immediately, and connects in a background thread to a controller provided by the given devices.
+     * @param parent The sketch.
+     * @param devices The provider of the MIDI devices to look the controller up in.
+     * @param onConnected Called once the controller is connected, or null.
+     */
+    public LaunchControl(PApplet parent, MidiDeviceProvider devices, ConnectionListener onConnected) throws MidiUnavailableException {
+        this(parent, false, (DevicePorts) null, null);
+        watchable(devices, DEVICE_NAME_SUFFIX);
+        if (onConnected != null)
+            addConnectionListener(onConnected);
+        connectAsync();
+    }
 
-        try {
-            padChangedEventMethod =
-                    parent.getClass().getMethod(padChangedEventName,null);
-        } catch (Exception e) {
-            // no such method, or an error, which is fine, just ignore
-            println(e.toString());
+    /***
+     * Connects to the given ports of a controller.
+     * @param ports The ports of the controller, or null if no controller was found.
+     * @param dispatcher The thread handling the messages of several controllers, or null to handle
+     *                   the messages in the thread delivering them.
+     */
+    LaunchControl(PApplet parent, boolean debug, DevicePorts ports, SharedDispatcher dispatcher) throws MidiUnavailableException {
+        super(parent, debug);
+        state = new ControlState(KNOB_COUNT, 0, PAD_COUNT);
+        for (int i = 0; i < KNOB_COUNT; i++) {
+            knobValues[i] = new Knob(i, parent, state, i);
+        }
+        for (int i = 0; i < PAD_COUNT; i++) {
+            padValues[i] = new Pad(i, parent, state, i, this);
+        }
+        if (ports != null) {
+            deviceIn = ports.input;
+            deviceOut = ports.output;
+            println("Connected to MIDI Input.");
+            if (deviceOut != null)
+                println("Connected to MIDI Output.");
         }
 
+        receiver = new LaunchControlDeviceReceiver(this, deviceOut, LAYOUT);
+        addSketchListeners();
 
-        deviceIn.open();
-        deviceOut.open();
-
-        receiver = new LaunchControlDeviceReceiver(this, deviceOut);
+        if (deviceIn == null)
+            return;
 
-        deviceIn.getTransmitter().setReceiver(receiver);
+        connect(dispatcher);
+        resetDevice();
+        startupFinished(ports);
 
+        setPadMode(PADMODE.TOGGLE);
+        println("LaunchControl ready!");
+    }
 
+    @Override
+    void resetDevice() {
         println("Resetting the controller...");
-        deviceOut.getReceiver().send(Message.getResetMessage(), -1);
+        receiver.sendMessage(Message.getResetMessage());
         println("Setting to factory template...");
-        deviceOut.getReceiver().send(Message.getSetTemplateMessage(), -1);
-
-        setPadMode(PADMODE.TOGGLE);
-        println("LaunchControl ready!");
+        receiver.sendMessage(Message.getSetTemplateMessage());
     }
 
     private void sendMidiMessage(MidiMessage message) {
-        try {
-            deviceOut.getReceiver().send(message, -1);
-        } catch (MidiUnavailableException e) {
+        if (receiver.output() == null) {
             println("An error occurred while sending a message to the MIDI device.");
+            return;
         }
+        receiver.sendMessage(message);
     }
 
     public void turnOnFlashing() {
@@ -258,7 +276,7 @@ public class LaunchControl extends MidiController implements MidiDevice {
     public void setPad(PADS pad, boolean value, boolean disableEvents) {
         if (padValues[pad.code()].value() != value) {
             padValues[pad.code()].value(value);
-            receiver.sendLedOnOff(value, pad);
+            receiver.setLed(pad, value);
             if (!disableEvents) {
                 midiLaunchControlChanged();
                 padChanged(pad);
@@ -279,49 +297,6 @@ public class LaunchControl extends MidiController implements MidiDevice {
     }
 
 
-    public void midiLaunchControlChanged() {
-        if (controllerChangedEventMethod != null) {
-            try {
-                //controllerChangedEventMethod.invoke(parent, new Object[]{this});
-                controllerChangedEventMethod.invoke(parent);
-            } catch (Exception e) {
-                System.err.println("Disabling controllerChangedEventMethod() for " + this.getClass().getName() +
-                        " because of an error.");
-                e.printStackTrace();
-                controllerChangedEventMethod = null;
-            }
-        }
-    }
-
-    public void padChanged(PADS pad) {
-        if (padChangedEventMethod != null) {
-            try {
-                //controllerChangedEventMethod.invoke(parent, new Object[]{this});
-                padChangedEventMethod.invoke(parent, pad);
-            } catch (Exception e) {
-                System.err.println("Disabling " + padChangedEventName + "() for " + this.getClass().getName() +
-                        " because of an error.");
-                e.printStackTrace();
-                padChangedEventMethod = null;
-            }
-        }
-    }
-
-    public void knobChanged(KNOBS knob) {
-        if (knobChangedEventMethod != null) {
-            try {
-                //controllerChangedEventMethod.invoke(parent, new Object[]{this});
-                knobChangedEventMethod.invoke(parent, knob);
-            } catch (Exception e) {
-                System.err.println("Disabling " + knobChangedEventMethod + "() for " + this.getClass().getName() +
-                        " because of an error.");
-                e.printStackTrace();
-                knobChangedEventMethod = null;
-            }
-        }
-    }
-
-
     /***
      * Enable or disable debug messages
      */
@@ -360,115 +335,29 @@ public class LaunchControl extends MidiController implements MidiDevice {
 
     @Override
     public boolean isKnobMessage(MidiMessage message) {
-        return (message.getMessage()[0] == -72);
+        return ControlLayout.type(LAYOUT.decode(message)) == ControlLayout.KNOB;
     }
 
     @Override
     public void setKnobPosition(MidiMessage message) {
-        byte[] lastMessage = message.getMessage();
-        switch (lastMessage[1]) {
-            case 21:
-                setKnobPosition(KNOBS.KNOB_01, lastMessage[2]);
-                break;
-            case 22:
-                setKnobPosition(KNOBS.KNOB_02, lastMessage[2]);
-                break;
-            case 23:
-                setKnobPosition(KNOBS.KNOB_03, lastMessage[2]);
-                break;
-            case 24:
-                setKnobPosition(KNOBS.KNOB_04, lastMessage[2]);
-                break;
-            case 25:
-                setKnobPosition(KNOBS.KNOB_05, lastMessage[2]);
-                break;
-            case 26:
-                setKnobPosition(KNOBS.KNOB_06, lastMessage[2]);
-                break;
-            case 27:
-                setKnobPosition(KNOBS.KNOB_07, lastMessage[2]);
-                break;
-            case 28:
-                setKnobPosition(KNOBS.KNOB_08, lastMessage[2]);
-                break;
-            case 41:
-                setKnobPosition(KNOBS.KNOB_09, lastMessage[2]);
-                break;
-            case 42:
-                setKnobPosition(KNOBS.KNOB_10, lastMessage[2]);
-                break;
-            case 43:
-                setKnobPosition(KNOBS.KNOB_11, lastMessage[2]);
-                break;
-            case 44:
-                setKnobPosition(KNOBS.KNOB_12, lastMessage[2]);
-                break;
-            case 45:
-                setKnobPosition(KNOBS.KNOB_13, lastMessage[2]);
-                break;
-            case 46:
-                setKnobPosition(KNOBS.KNOB_14, lastMessage[2]);
-                break;
-            case 47:
-                setKnobPosition(KNOBS.KNOB_15, lastMessage[2]);
-                break;
-            case 48:
-                setKnobPosition(KNOBS.KNOB_16, lastMessage[2]);
+        int control = LAYOUT.decode(message);
+        switch (ControlLayout.type(control)) {
+            case ControlLayout.KNOB:
+                setKnobPosition(ControlLayout.KNOB_VALUES[ControlLayout.index(control)], ControlLayout.data2(message));
                 break;
         }
     }
 
     @Override
     public boolean isPad(MidiMessage message) {
-        return message.getMessage()[0] == -104 || message.getMessage()[0] == -120;
+        return ControlLayout.type(LAYOUT.decode(message)) == ControlLayout.PAD;
     }
 
     @Override
     public PADS getPadFromMessage(MidiMessage message) {
-        PADS pad = null;
-        byte[] msgBytes = message.getMessage();
-
-        switch (msgBytes[1]) {
-            case 9:
-                if (msgBytes[2] == 127)
-                    pad = PADS.PAD_1;
-                break;
-            case 10:
-                if (msgBytes[2] == 127) {
-                    pad = PADS.PAD_2;
-                }
-                break;
-            case 11:
-                if (msgBytes[2] == 127) {
-                    pad = PADS.PAD_3;
-                }
-                break;
-            case 12:
-                if (msgBytes[2] == 127) {
-                    pad = PADS.PAD_4;
-                }
-                break;
-            case 25:
-                if (msgBytes[2] == 127) {
-                    pad = PADS.PAD_5;
-                }
-                break;
-            case 26:
-                if (msgBytes[2] == 127) {
-                    pad = PADS.PAD_6;
-                }
-                break;
-            case 27:
-                if (msgBytes[2] == 127) {
-                    pad = PADS.PAD_7;
-                }
-                break;
-            case 28:
-                if (msgBytes[2] == 127) {
-                    pad = PADS.PAD_8;
-                }
-                break;
-        }
-        return pad;
+        int control = LAYOUT.decode(message);
+        if (ControlLayout.type(control) != ControlLayout.PAD || ControlLayout.data2(message) != 127)
+            return null;
+        return ControlLayout.PAD_VALUES[ControlLayout.index(control)];
     }
 }
\ No newline at end of file
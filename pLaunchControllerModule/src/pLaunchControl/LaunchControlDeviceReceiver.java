@@ -1,8 +1,12 @@
 package pLaunchControl;
 
 import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiUnavailableException;
 import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
 import javax.sound.midi.SysexMessage;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
@@ -11,90 +15,694 @@ import javax.sound.midi.SysexMessage;
 class LaunchControlDeviceReceiver implements Receiver {
 
     private final MidiDevice parent;
-    private final javax.sound.midi.MidiDevice device;
+    private final MidiController controller;
+    private final ControlState state;
+    private volatile javax.sound.midi.MidiDevice device;
+    private final ControlLayout layout;
+    final LedBuffer leds;
+    private volatile Receiver output;
 
-    LaunchControlDeviceReceiver(MidiDevice parent, javax.sound.midi.MidiDevice device) {
+    /**
+     * When not null, messages to the device are sent by the scheduler thread.
+     */
+    volatile OutputScheduler scheduler;
+
+    /**
+     * When not null, incoming short messages are appended to a recording.
+     */
+    volatile SessionRecorder recorder;
+
+    /**
+     * The thread replaying a recording, see {@link SessionPlayer}, or null. While a recording is replayed, the messages
+     * of the device are ignored, so that messages are still decoded by a single thread at a time: the event queue,
+     * the pending bits of paired controls, the increments of relative knobs and the pad timing have a single producer.
+     */
+    private volatile Thread replaying;
+
+    /**
+     * Set while a message of the device is handled, so that a replay starts once it is done.
+     */
+    private volatile boolean live;
+
+    /**
+     * When not null, decoded events are queued and handled in {@link #drain()}, instead of
+     * being handled in the thread delivering the MIDI messages.
+     */
+    volatile EventQueue queue;
+
+    /**
+     * The queues replaced or disabled since the last frame, oldest first, drained by the animation thread at the
+     * start of the next frame. While queueing is disabled, messages are still added to the last one until then,
+     * so that they are handled after the events queued before them. Only changed during a handover.
+     */
+    private final ArrayDeque<EventQueue> retired = new ArrayDeque<>();
+
+    /**
+     * Set by the animation thread while it replaces a queue or drains the retired queues: the thread receiving
+     * the messages waits meanwhile, so that no event is added to a queue being forgotten, and events are handled
+     * in the order they arrived.
+     */
+    private volatile boolean handover;
+
+    /**
+     * Set while the thread receiving the messages adds an event to a queue, or handles it.
+     */
+    private volatile boolean offering;
+
+    /**
+     * When not null, knob and slider changes are coalesced and handled once per frame in {@link #flush()}.
+     */
+    volatile CoalescedChanges changes;
+
+    /**
+     * When not null, the latency of each message is measured.
+     */
+    volatile LatencyStats stats;
+
+    /**
+     * The presses and releases of the pads, turned into the flags of pad events as messages arrive.
+     */
+    final PadTiming timing;
+
+    /**
+     * The {@link PADMODE#TRIGGER} pads pushed since the start of the last frame, one bit per pad, and the pads
+     * turned off at the end of the current frame, only used by the animation thread.
+     */
+    private final AtomicLong triggered = new AtomicLong();
+    private long shown;
+
+    // queued events hold the control above the data, which is 14 bits for high-resolution positions
+    private static final int DATA_BITS = 14;
+    private static final int DATA_MASK = (1 << DATA_BITS) - 1;
+
+    <T extends MidiController & MidiDevice> LaunchControlDeviceReceiver(T parent, javax.sound.midi.MidiDevice device, ControlLayout layout) {
         this.parent = parent;
+        this.controller = parent;
+        this.state = parent.state;
         this.device = device;
+        this.layout = layout;
+        this.leds = new LedBuffer(layout);
+        this.timing = new PadTiming(state.padValue.length);
     }
 
-    byte[] lastMessage;
 
+    /**
+     * @return The device whose controls are updated by the receiver.
+     */
+    MidiDevice controls() {
+        return parent;
+    }
 
     /**
      * Handles new messages coming from the Midi controller.
+     * Short messages are decoded with the device {@link ControlLayout}, reading status
+     * and data bytes directly, without copying the contents of the message.
      *
      * @param message
      * @param timeStamp
      */
     @Override
     public void send(MidiMessage message, long timeStamp) {
+        receive(message, 0, timeStamp);
+    }
+
+    /**
+     * Handles a message, received at the given time.
+     * @param arrival The {@link System#nanoTime()} of the arrival of the message, or 0 to use the current time.
+     */
+    void receive(MidiMessage message, long arrival) {
+        receive(message, arrival, -1);
+    }
+
+    /**
+     * Handles a message, received at the given time.
+     * @param arrival The {@link System#nanoTime()} of the arrival of the message, or 0 to use the current time.
+     * @param timeStamp The timestamp of the message given by the device, in microseconds, or -1.
+     */
+    void receive(MidiMessage message, long arrival, long timeStamp) {
+        live = true;
+        try {
+            if (replaying == null)
+                handle(message, arrival, timeStamp);
+        } finally {
+            live = false;
+        }
+    }
 
-        lastMessage = message.getMessage();
+    /**
+     * Starts replaying a recording from the current thread. Messages of the device are ignored until
+     * {@link #endReplay()}, and the message being handled, if any, is done when this method returns.
+     */
+    void beginReplay() {
+        replaying = Thread.currentThread();
+        while (live)
+            Thread.onSpinWait();
+    }
 
-        if (parent.debug() && (message instanceof SysexMessage)) {
-            // Print contents of sysex message
-            System.out.println();
-            System.out.print("Sysex MIDI message <<");
-            for (byte b : lastMessage) {
-                System.out.print(" " + b);
+    /**
+     * Handles a replayed message, as if it came from the device, see {@link #beginReplay()}.
+     */
+    void replay(MidiMessage message) {
+        handle(message, 0, -1);
+    }
+
+    void endReplay() {
+        replaying = null;
+    }
+
+    private void handle(MidiMessage message, long arrival, long timeStamp) {
+        LatencyStats stats = this.stats;
+        if (stats != null && arrival == 0)
+            arrival = System.nanoTime();
+
+        SessionRecorder recorder = this.recorder;
+        if (recorder != null && message instanceof ShortMessage) {
+            ShortMessage shortMessage = (ShortMessage) message;
+            recorder.record(shortMessage.getStatus(), shortMessage.getData1(), shortMessage.getData2());
+        }
+
+        if (message instanceof SysexMessage) {
+            if (parent.debug()) {
+                // Print contents of sysex message
+                System.out.println();
+                System.out.print("Sysex MIDI message <<");
+                for (byte b : message.getMessage()) {
+                    System.out.print(" " + b);
+                }
+                System.out.println(">>");
             }
-            System.out.println(">>");
             return;
         }
 
-        if (parent.debug())
+        if (parent.debug()) {
+            byte[] lastMessage = message.getMessage();
             System.out.println("lastMessage [0]:" + lastMessage[0] + " [1]:" + lastMessage[1] + " [2]:" + lastMessage[2]);
+        }
 
-        if (parent.isKnobMessage(message)) {
-            parent.setKnobPosition(message);
+        int control = layout.decode(message);
+        int data2 = ControlLayout.data2(message);
+        HighResolution resolution = state.resolution;
+        if (resolution != null && resolution.paired()) {
+            if (control == ControlLayout.NONE) {
+                // the least significant bits of a control in paired mode complete its position
+                int index = layout.isControlChange(message) ? resolution.lsbControl(ControlLayout.data1(message)) : -1;
+                if (index < 0)
+                    return;
+                control = ControlLayout.FINE << 8 | index;
+                data2 = resolution.position(index, data2);
+            } else {
+                int index = stateIndex(control);
+                if (index >= 0 && resolution.mode(index) == HighResolution.PAIRED) {
+                    resolution.msb(index, data2);
+                    return;
+                }
+            }
         }
-        else if (parent.isPad(message)) {
-            PADS padToChange = parent.getPadFromMessage(message);
-            //TODO padToChange is null when "note off" (button released) message
-            //is received ( bytes[2] == 0)
-            if (padToChange != null) {
-                if (parent.debug())
-                    System.out.printf("Received message for pad %s.%n", padToChange);
-                parent.invertPad(padToChange);
-                switch (parent.getPadMode()) {
-                    case RADIO:
-                        //switch off all other pads, without triggering events
-                        for (Pad pad : parent.getPads())
-                            if (!pad.equals(padToChange))
-                                parent.setPad(pad.controllerPad, false, true);
-                        break;
-                    case TOGGLE:
-                        sendLedOnOff(parent.getPad(padToChange).value(), padToChange);
-                        break;
+        if (control == ControlLayout.NONE)
+            return;
+        if (ControlLayout.type(control) == ControlLayout.PAD) {
+            // pad events carry the flags of the press or release instead of the velocity
+            boolean pressed = data2 > 0 && !layout.isNoteOff(message);
+            data2 = timing.edge(ControlLayout.index(control), pressed, timeStamp, arrival);
+        }
+        if (stats != null)
+            stats.decoded(arrival);
+
+        // increments of relative knobs all count, and their acceleration needs their arrival time,
+        // like the speed of controls estimated in high resolution, even when dispatched later
+        boolean relative = isRelative(control);
+        if (arrival == 0 && (relative || isEstimated(control)))
+            arrival = System.nanoTime();
+
+        CoalescedChanges changes = relative ? null : this.changes;
+        if (changes != null) {
+            switch (ControlLayout.type(control)) {
+                case ControlLayout.KNOB:
+                    changes.update(ControlLayout.index(control), data2, arrival);
+                    return;
+                case ControlLayout.SLIDER:
+                    changes.update(CoalescedChanges.SLIDER_OFFSET + ControlLayout.index(control), data2, arrival);
+                    return;
+                case ControlLayout.FINE:
+                    int index = ControlLayout.index(control);
+                    int bit = index < state.knobCount() ? index : CoalescedChanges.SLIDER_OFFSET + index - state.knobCount();
+                    changes.update(bit, CoalescedChanges.FINE | data2, arrival);
+                    return;
+            }
+        }
+
+        offering = true;
+        while (handover) {
+            offering = false;
+            while (handover)
+                Thread.onSpinWait();
+            offering = true;
+        }
+        try {
+            if (offer(control, data2, arrival))
+                flushLeds();
+        } finally {
+            offering = false;
+        }
+    }
+
+    /**
+     * Queues an event, or handles it at once when events are not queued. Called by the thread receiving the
+     * messages, or by the animation thread during a handover.
+     * @return True if the event was handled.
+     */
+    private boolean offer(int control, int data2, long arrival) {
+        EventQueue queue = this.queue;
+        if (queue == null)
+            queue = retired.peekLast();
+        if (queue != null) {
+            queue.offer(control << DATA_BITS | data2, arrival);
+            return false;
+        }
+        dispatch(control, data2, arrival);
+        return true;
+    }
+
+    /**
+     * Handles the events queued since the last call. Events arriving while draining are
+     * left for the next call, so that a burst of messages does not hold the caller.
+     */
+    void drain() {
+        if (!retired.isEmpty()) {
+            beginHandover();
+            try {
+                EventQueue retired;
+                while ((retired = this.retired.pollFirst()) != null)
+                    drain(retired);
+            } finally {
+                handover = false;
+            }
+        }
+        EventQueue queue = this.queue;
+        if (queue != null)
+            drain(queue);
+    }
+
+    /**
+     * Replaces the event queue. Events left in the previous queue are handled by the next {@link #drain()},
+     * before the events of the new queue, or before the events handled as soon as they arrive.
+     * Called by the animation thread.
+     * @param queue The new queue, or null to handle events as soon as they arrive.
+     */
+    void replaceQueue(EventQueue queue) {
+        beginHandover();
+        try {
+            if (this.queue != null)
+                retired.addLast(this.queue);
+            this.queue = queue;
+        } finally {
+            handover = false;
+        }
+    }
+
+    /**
+     * Waits for the thread receiving the messages to be done with the event it is adding, if any.
+     * The thread then waits until the handover ends.
+     */
+    private void beginHandover() {
+        handover = true;
+        while (offering)
+            Thread.onSpinWait();
+    }
+
+    void drain(EventQueue queue) {
+        for (int n = queue.size(); n > 0; n--) {
+            int record = queue.poll();
+            dispatch(record >>> DATA_BITS, record & DATA_MASK, queue.lastTime());
+        }
+    }
+
+    /**
+     * Applies the latest position of each knob and slider changed since the last call.
+     */
+    void flush() {
+        CoalescedChanges changes = this.changes;
+        if (changes != null)
+            flush(changes);
+    }
+
+    void flush(CoalescedChanges changes) {
+        long dirty = changes.take();
+        while (dirty != 0) {
+            int bit = Long.numberOfTrailingZeros(dirty);
+            dirty &= dirty - 1;
+            int control = bit < CoalescedChanges.SLIDER_OFFSET
+                    ? ControlLayout.KNOB << 8 | bit
+                    : ControlLayout.SLIDER << 8 | (bit - CoalescedChanges.SLIDER_OFFSET);
+            int position = changes.position(bit);
+            if ((position & CoalescedChanges.FINE) != 0) {
+                control = ControlLayout.FINE << 8 | stateIndex(control);
+                position &= ~CoalescedChanges.FINE;
+            }
+            dispatch(control, position, changes.time(bit));
+        }
+    }
+
+    /**
+     * @return The index of a knob or slider in the {@link ControlState}, or -1 for other controls.
+     */
+    private int stateIndex(int control) {
+        switch (ControlLayout.type(control)) {
+            case ControlLayout.KNOB:
+                return ControlLayout.index(control);
+            case ControlLayout.SLIDER:
+                return state.knobCount() + ControlLayout.index(control);
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Updates the control decoded by the {@link ControlLayout}, triggering the events of the parent.
+     * @param control The control, as returned by {@link ControlLayout#decode(int, int)}
+     * @param data2 The position of knobs and sliders, or the flags of {@link PadTiming} for pads; 14-bit positions for {@link ControlLayout#FINE}.
+     * @param arrival The arrival time of the message, or 0 if unknown.
+     */
+    private void dispatch(int control, int data2, long arrival) {
+        LatencyStats stats = this.stats;
+        if (stats != null && arrival != 0)
+            stats.beginDispatch(arrival);
+        switch (ControlLayout.type(control)) {
+            case ControlLayout.KNOB:
+                knobMoved(ControlLayout.KNOB_VALUES[ControlLayout.index(control)], data2, arrival);
+                break;
+            case ControlLayout.SLIDER:
+                sliderMoved(ControlLayout.SLIDER_VALUES[ControlLayout.index(control)], data2, arrival);
+                break;
+            case ControlLayout.PAD:
+                PADS pad = ControlLayout.PAD_VALUES[ControlLayout.index(control)];
+                boolean edge = (data2 & (PadTiming.PRESSED | PadTiming.RELEASED)) != 0;
+                Automation automation = controller.automation;
+                if (automation != null && automation.isRecordPad(pad)) {
+                    if (edge)
+                        automation.recordPadPressed((data2 & PadTiming.PRESSED) != 0);
+                    break;
                 }
+                PresetBank presets = controller.presets;
+                if (presets != null && presets.isPresetPad(pad)) {
+                    if (edge)
+                        presets.padPressed(pad, (data2 & PadTiming.PRESSED) != 0);
+                    break;
+                }
+                padChanged(pad, data2);
+                break;
+            case ControlLayout.FINE:
+                fineChanged(ControlLayout.index(control), data2);
+                break;
+        }
+        Automation automation = controller.automation;
+        if (automation != null && ControlLayout.type(control) != ControlLayout.PAD)
+            automation.record(ControlLayout.type(control) == ControlLayout.FINE ? ControlLayout.index(control) : stateIndex(control));
+        if (stats != null)
+            stats.endDispatch();
+    }
 
+    private boolean isRelative(int control) {
+        return ControlLayout.type(control) == ControlLayout.KNOB && state.encoders != null
+                && state.encoders.relative(ControlLayout.index(control));
+    }
+
+    private boolean isEstimated(int control) {
+        HighResolution resolution = state.resolution;
+        int index = stateIndex(control);
+        return resolution != null && index >= 0 && resolution.mode(index) == HighResolution.ESTIMATED;
+    }
+
+    private void knobMoved(KNOBS knob, int data, long arrival) {
+        if (parent.getKnob(knob).received(data, arrival)) {
+            controller.midiLaunchControlChanged();
+            controller.knobChanged(knob);
+        }
+    }
+
+    private void sliderMoved(SLIDERS slider, int position, long arrival) {
+        if (parent.getSlider(slider).move(position, arrival)) {
+            controller.midiLaunchControlChanged();
+            controller.sliderChanged(slider);
+        }
+    }
+
+    /**
+     * Sets the value of a knob or slider played back by an {@link Automation} lane, triggering the events of the parent.
+     * @param index The index of the control in the {@link ControlState}.
+     * @param normal The value, normalized between 0 and 1.
+     */
+    void automate(int index, double normal) {
+        int knobCount = state.knobCount();
+        if (index < knobCount) {
+            KNOBS knob = ControlLayout.KNOB_VALUES[index];
+            if (parent.getKnob(knob).automate(normal)) {
+                controller.midiLaunchControlChanged();
+                controller.knobChanged(knob);
+            }
+        } else {
+            SLIDERS slider = ControlLayout.SLIDER_VALUES[index - knobCount];
+            if (parent.getSlider(slider).automate(normal)) {
+                controller.midiLaunchControlChanged();
+                controller.sliderChanged(slider);
+            }
+        }
+    }
 
+    /**
+     * Triggers the events of the knobs and sliders recalled from a {@link PresetBank}, after their values
+     * were written at once.
+     * @param changed A bit set of the indexes of the changed controls in the {@link ControlState}.
+     */
+    void recalled(long changed) {
+        int knobCount = state.knobCount();
+        while (changed != 0) {
+            int index = Long.numberOfTrailingZeros(changed);
+            changed &= changed - 1;
+            if (index < knobCount) {
+                KNOBS knob = ControlLayout.KNOB_VALUES[index];
+                parent.getKnob(knob).refresh();
+                controller.midiLaunchControlChanged();
+                controller.knobChanged(knob);
+            } else {
+                SLIDERS slider = ControlLayout.SLIDER_VALUES[index - knobCount];
+                parent.getSlider(slider).refresh();
+                controller.midiLaunchControlChanged();
+                controller.sliderChanged(slider);
             }
         }
     }
 
+    /**
+     * Sets a pad recalled from a {@link PresetBank}, turning its light on or off and triggering the events of the parent.
+     */
+    void recalled(PADS pad, boolean value) {
+        parent.setPad(pad, value, false);
+    }
 
-    protected void sendLedOnOff(boolean onOff, PADS pad) {
+    private void fineChanged(int index, int fine) {
+        int knobCount = state.knobCount();
+        if (index < knobCount) {
+            KNOBS knob = ControlLayout.KNOB_VALUES[index];
+            if (parent.getKnob(knob).positionFine(fine)) {
+                controller.midiLaunchControlChanged();
+                controller.knobChanged(knob);
+            }
+        } else {
+            SLIDERS slider = ControlLayout.SLIDER_VALUES[index - knobCount];
+            if (parent.getSlider(slider).positionFine(fine)) {
+                controller.midiLaunchControlChanged();
+                controller.sliderChanged(slider);
+            }
+        }
+    }
+
+    /**
+     * Updates a pad according to its {@link PADMODE}.
+     * @param flags The flags of the event, see {@link PadTiming}.
+     */
+    private void padChanged(PADS padToChange, int flags) {
+        if (parent.debug())
+            System.out.printf("Received message for pad %s.%n", padToChange);
+        Pad[] pads = parent.getPads();
+        Pad changed = pads[padToChange.code()];
+        // the modes are read at once, before or after a mapping changing them
+        PADMODE mode;
+        long radio;
+        long s;
+        do {
+            s = state.beginRead();
+            PADMODE deviceMode = parent.getPadMode();
+            mode = changed.mode() == null ? deviceMode : changed.mode();
+            radio = 0;
+            if (mode == PADMODE.RADIO)
+                for (Pad pad : pads)
+                    if ((pad.mode() == null ? deviceMode : pad.mode()) == PADMODE.RADIO)
+                        radio |= 1L << pad.controllerPad.code();
+        } while (!state.validate(s));
+        boolean pressed = (flags & PadTiming.PRESSED) != 0;
+        switch (mode) {
+            case TOGGLE:
+                if (pressed)
+                    parent.invertPad(padToChange);
+                break;
+            case RADIO:
+                if (!pressed)
+                    break;
+                parent.invertPad(padToChange);
+                //switch off all other pads, without triggering events
+                for (Pad pad : pads)
+                    if (pad.controllerPad != padToChange && (radio & 1L << pad.controllerPad.code()) != 0)
+                        parent.setPad(pad.controllerPad, false, true);
+                break;
+            case MOMENTARY:
+                if ((flags & (PadTiming.PRESSED | PadTiming.RELEASED)) != 0)
+                    parent.setPad(padToChange, pressed, false);
+                break;
+            case TRIGGER:
+                if (!pressed)
+                    break;
+                parent.setPad(padToChange, true, true);
+                triggered.getAndAccumulate(1L << padToChange.code(), (t, bit) -> t | bit);
+                controller.midiLaunchControlChanged();
+                controller.padChanged(padToChange);
+                break;
+            case CYCLE:
+                if (!pressed)
+                    break;
+                changed.advance();
+                setLed(padToChange, changed.value());
+                controller.midiLaunchControlChanged();
+                controller.padChanged(padToChange);
+                break;
+            case LONG_PRESS:
+                if ((flags & PadTiming.LONG_PRESS) != 0)
+                    parent.invertPad(padToChange);
+                break;
+            case DOUBLE_TAP:
+                if ((flags & PadTiming.DOUBLE_TAP) != 0)
+                    parent.invertPad(padToChange);
+                break;
+        }
+    }
+
+    /**
+     * Handles the pads held for the long-press time, as if their long press came with the messages of the device:
+     * the event is queued with the messages when events are queued, and is otherwise handled during a handover,
+     * while the thread receiving the messages waits, so that the events of a pad are never handled by two threads
+     * at once. Called by the animation thread at the start of each frame, before the queue is drained.
+     */
+    void longPresses() {
+        long held = timing.longPresses(System.nanoTime());
+        if (held == 0)
+            return;
+        beginHandover();
         try {
-            //Hex version F0h 00h 20h 29h 02h 0Ah 78h [Template] [LED] Value F7h
-            //Where Template is 00h-07h (0-7) for the 8 user templates, and 08h-0Fh (8-15) for the 8 factory
-            //templates; LED is the index of the pad/button (00h-07h (0-7) for pads, 08h-0Bh (8-11) for buttons);
-            //and Value is the velocity byte that defines the brightness values of both the red and green LEDs.
-            byte template = 0x08;
-            byte color = onOff ? LedConstants.RED_FULL : LedConstants.OFF;
-            byte[] ledOn = new byte[]{(byte) 0xF0, 0x00, 0x20, 0x29, 0x02, 0x0A, 0x78, template, pad.code(), color, (byte) 0xF7};
-            SysexMessage ledOnMsg = new SysexMessage(ledOn, ledOn.length);
+            while (held != 0) {
+                int pad = Long.numberOfTrailingZeros(held);
+                held &= held - 1;
+                offer(ControlLayout.PAD << 8 | pad, PadTiming.LONG_PRESS, 0);
+            }
+        } finally {
+            handover = false;
+        }
+    }
+
+    /**
+     * Shows the {@link PADMODE#TRIGGER} pads pushed since the last frame through the frame about to be drawn.
+     * Called by the animation thread at the start of each frame.
+     */
+    void beginFrame() {
+        long pushed = triggered.getAndSet(0);
+        shown |= pushed;
+        while (pushed != 0) {
+            // a pad pushed again during the last frame was turned off at its end
+            int pad = Long.numberOfTrailingZeros(pushed);
+            pushed &= pushed - 1;
+            parent.setPad(ControlLayout.PAD_VALUES[pad], true, true);
+        }
+    }
+
+    /**
+     * Turns off the {@link PADMODE#TRIGGER} pads shown through the frame just drawn, without triggering events.
+     * Called by the animation thread at the end of each frame.
+     */
+    void endFrame() {
+        long shown = this.shown;
+        this.shown = 0;
+        while (shown != 0) {
+            int pad = Long.numberOfTrailingZeros(shown);
+            shown &= shown - 1;
+            parent.setPad(ControlLayout.PAD_VALUES[pad], false, true);
+        }
+    }
+
+    /**
+     * Turns the light of a pad on or off, with the colour of its state in {@link PADMODE#CYCLE} mode.
+     * The change is sent to the device in the next {@link #flushLeds()}.
+     */
+    void setLed(PADS pad, boolean onOff) {
+        Pad[] pads = parent.getPads();
+        Pad p = pads == null || pad.code() >= pads.length ? null : pads[pad.code()];
+        leds.set(pad.code(), p == null ? (onOff ? LedConstants.RED_FULL : LedConstants.OFF) : p.led(onOff));
+    }
+
+    /**
+     * Sends the pad lights changed since the last call to the device.
+     */
+    void flushLeds() {
+        OutputScheduler scheduler = this.scheduler;
+        if (scheduler != null) {
+            scheduler.flushLeds();
+            return;
+        }
+        Receiver out = output();
+        if (out != null)
+            leds.flush(out);
+    }
 
-            device.getReceiver().send(ledOnMsg, -1);
-        } catch (Exception e) {
-            System.out.println("Error sending Midi message: " + e);
+    /**
+     * Sends a message to the device, through the scheduler thread if enabled.
+     */
+    void sendMessage(MidiMessage message) {
+        OutputScheduler scheduler = this.scheduler;
+        if (scheduler != null) {
+            scheduler.send(message);
+            return;
         }
+        Receiver out = output();
+        if (out != null)
+            out.send(message, -1);
+    }
+
+    /**
+     * Replaces the output port, after the controller was disconnected or reconnected.
+     * @param device The new output port, or null while the controller is disconnected.
+     */
+    void setDevice(javax.sound.midi.MidiDevice device) {
+        this.device = device;
+        this.output = null;
+    }
 
+    /**
+     * @return The receiver of the device output, obtained once and reused for every message.
+     */
+    Receiver output() {
+        Receiver output = this.output;
+        javax.sound.midi.MidiDevice device = this.device;
+        if (output == null && device != null) {
+            try {
+                output = device.getReceiver();
+                this.output = output;
+            } catch (MidiUnavailableException e) {
+                System.out.println("Error sending Midi message: " + e);
+            }
+        }
+        return output;
     }
 
     public void send(SysexMessage message, long timeStamp) {
-        lastMessage = message.getMessage();
+        byte[] lastMessage = message.getMessage();
         if (parent.debug())
             System.out.println("SysexMessage lastMessage [0]:" + lastMessage[0] + " [1]:" + lastMessage[1] + " [2]:" + lastMessage[2]);
     }
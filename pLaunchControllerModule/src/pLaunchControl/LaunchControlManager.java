@@ -0,0 +1,182 @@
+package pLaunchControl;
+
+import processing.core.PApplet;
+
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.spi.MidiDeviceProvider;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Connects to every Launch Control and Launch Control XL plugged in, for rigs using several units.
+ * Each unit gets its own controller, which can be used like a controller created on its own, and
+ * the messages of all units are handled by a single shared thread.</p>
+ * <p>The knobs and sliders of all units are also numbered with a global index, units in the order they
+ * were found, and within a unit knobs first and then sliders, so that a sketch can read all controls of
+ * the rig as a single array:</p>
+ * <p>{@code
+ * LaunchControlManager manager = new LaunchControlManager(this);
+ * float[] values = manager.copyValues(null);
+ * }</p>
+ */
+public class LaunchControlManager {
+
+    private final List<MidiController> controllers = new ArrayList<>();
+    private final SharedDispatcher dispatcher = new SharedDispatcher();
+
+    /**
+     * The global index of the first knob of each unit, followed by the total number of knobs and sliders.
+     */
+    private final int[] controlOffsets;
+    private final int[] padOffsets;
+
+    public LaunchControlManager(PApplet parent) throws MidiUnavailableException {
+        this(parent, false, SystemMidiDevices.INSTANCE);
+    }
+
+    /***
+     * @param parent The sketch.
+     * @param debug True to print debug messages.
+     * @param devices The provider of the MIDI devices to look the controllers up in.
+     */
+    public LaunchControlManager(PApplet parent, boolean debug, MidiDeviceProvider devices) throws MidiUnavailableException {
+        parent.registerMethod("dispose", this);
+        for (DevicePorts ports : DevicePorts.discover(devices, debug, LaunchControlXL.DEVICE_NAME_SUFFIX, LaunchControl.DEVICE_NAME_SUFFIX)) {
+            if (ports.name().endsWith(LaunchControlXL.DEVICE_NAME_SUFFIX))
+                controllers.add(new LaunchControlXL(parent, debug, ports, dispatcher));
+            else
+                controllers.add(new LaunchControl(parent, debug, ports, dispatcher));
+        }
+        if (controllers.isEmpty())
+            System.out.printf("No device with name ending with %s or %s was detected.\n", LaunchControlXL.DEVICE_NAME_SUFFIX, LaunchControl.DEVICE_NAME_SUFFIX);
+
+        controlOffsets = new int[controllers.size() + 1];
+        padOffsets = new int[controllers.size() + 1];
+        for (int i = 0; i < controllers.size(); i++) {
+            ControlState state = controllers.get(i).state;
+            controlOffsets[i + 1] = controlOffsets[i] + state.value.length;
+            padOffsets[i + 1] = padOffsets[i] + state.padValue.length;
+        }
+    }
+
+    /***
+     * @return The number of units connected.
+     */
+    public int size() {
+        return controllers.size();
+    }
+
+    /***
+     * Returns the controller of a unit, exposing both the controls of {@link MidiDevice} and the settings of
+     * {@link MidiController}, such as {@code manager.get(0).queueEvents(true)}. It can also be assigned to the
+     * class of the unit, {@link LaunchControlXL} or {@link LaunchControl}, when the class of the unit is known.
+     * @param unit The index of the unit, in the order the units were found.
+     * @return The controller of the unit.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends MidiController & MidiDevice> T get(int unit) {
+        return (T) controllers.get(unit);
+    }
+
+    /***
+     * @return The number of knobs and sliders of all units.
+     */
+    public int controlCount() {
+        return controlOffsets[controllers.size()];
+    }
+
+    /***
+     * @return The number of pads of all units.
+     */
+    public int padCount() {
+        return padOffsets[controllers.size()];
+    }
+
+    /***
+     * @return The global index of a knob of a unit.
+     */
+    public int controlIndex(int unit, KNOBS knob) {
+        return controlOffsets[unit] + knob.code();
+    }
+
+    /***
+     * @return The global index of a slider of a unit.
+     */
+    public int controlIndex(int unit, SLIDERS slider) {
+        ControlState state = controllers.get(unit).state;
+        if (state.sliderCount() == 0)
+            throw new UnsupportedOperationException("Method not available. This device does not have sliders.");
+        return controlOffsets[unit] + state.knobCount() + slider.code();
+    }
+
+    /***
+     * @return The global index of a pad of a unit.
+     */
+    public int padIndex(int unit, PADS pad) {
+        return padOffsets[unit] + pad.code();
+    }
+
+    /***
+     * @param control The global index of a knob or slider.
+     * @return The unit the control belongs to.
+     */
+    public int unitOf(int control) {
+        if (control < 0 || control >= controlCount())
+            throw new IndexOutOfBoundsException("LaunchControl Error: there is no control " + control + ".");
+        int unit = 0;
+        while (control >= controlOffsets[unit + 1])
+            unit++;
+        return unit;
+    }
+
+    /***
+     * @param control The global index of a knob or slider.
+     * @return The value of the control, according to its range.
+     */
+    public float value(int control) {
+        int unit = unitOf(control);
+        return controllers.get(unit).state.value[control - controlOffsets[unit]];
+    }
+
+    /***
+     * @param pad The global index of a pad.
+     * @return The value of the pad.
+     */
+    public boolean padValue(int pad) {
+        if (pad < 0 || pad >= padCount())
+            throw new IndexOutOfBoundsException("LaunchControl Error: there is no pad " + pad + ".");
+        int unit = 0;
+        while (pad >= padOffsets[unit + 1])
+            unit++;
+        return controllers.get(unit).state.padValue[pad - padOffsets[unit]];
+    }
+
+    /***
+     * Copies the values of the knobs and sliders of all units, in the order of their global index.
+     * The values of each unit are taken at a single point in time, see {@link MidiDevice#snapshot()}.
+     * @param dst The array to copy the values to, reused from frame to frame.
+     * @return dst, or a new array if dst is null or too short.
+     */
+    public float[] copyValues(float[] dst) {
+        if (dst == null || dst.length < controlCount())
+            dst = new float[controlCount()];
+        for (int i = 0; i < controllers.size(); i++)
+            controllers.get(i).state.copyValues(dst, controlOffsets[i]);
+        return dst;
+    }
+
+    /***
+     * @return The number of messages dropped because the units sent them faster than they were handled.
+     */
+    public long getDroppedEvents() {
+        return dispatcher.dropped();
+    }
+
+    /***
+     * Stops the shared thread. Each controller closes its own devices.
+     * Called by Processing when the sketch shuts down.
+     */
+    public void dispose() {
+        dispatcher.stop();
+    }
+}
@@ -1,10 +1,9 @@
 package pLaunchControl;
 
 import processing.core.PApplet;
-import uk.co.xfactorylibrarians.coremidi4j.CoreMidiDeviceProvider;
 
 import javax.sound.midi.*;
-import java.lang.reflect.Method;
+import javax.sound.midi.spi.MidiDeviceProvider;
 
 import static processing.core.PApplet.println;
 
@@ -49,23 +48,15 @@ import static processing.core.PApplet.println;
 
 public class LaunchControlXL extends MidiController implements MidiDevice {
 	
-    Method controllerChangedEventMethod, knobChangedEventMethod, sliderChangedEventMethod, padChangedEventMethod;
-
     public static final String DEVICE_NAME_SUFFIX = "Launch Control XL";
-    private static final String controlChangedEventName = "LaunchControlChanged";
-    private static final String knobChangedEventName = "LaunchControlKnobChanged";
-    private static final String sliderChangedEventName = "LaunchControlSliderChanged";
-    private static final String padChangedEventName = "LaunchControlPadChanged";
+    static final ControlLayout LAYOUT = ControlLayout.LAUNCH_CONTROL_XL;
 
     private final Knob[] knobValues = new Knob[24];
     private final Slider[] sliderValues = new Slider[8];
     private final Pad[] padValues = new Pad[16];
 
-    private PADMODE padMode;    
+    private PADMODE padMode = PADMODE.TOGGLE;    
 
-    javax.sound.midi.MidiDevice.Info[] infos = null;
-    
-    LaunchControlDeviceReceiver receiver;
     
     public boolean debug = false;
 
@@ -79,91 +70,113 @@ public class LaunchControlXL extends MidiController implements MidiDevice {
         this(parent, false, null);
     }
 
+    /***
+     * Connects to a controller provided by the given devices, for instance a {@link LoopbackDevice}.
+     * @param parent The sketch.
+     * @param devices The provider of the MIDI devices to look the controller up in.
+     */
+    public LaunchControlXL(PApplet parent, MidiDeviceProvider devices) throws MidiUnavailableException {
+        this(parent, false, null, devices);
+    }
+
     public LaunchControlXL(PApplet parent, boolean debug, String deviceName) throws MidiUnavailableException {
-        super(parent,debug);
-        this.parent = parent;
-        for (int i = 0, l = KNOBS.values().length; i < l; i++) {
-            knobValues[i] = new Knob(i,parent);
-        }
-        for (int i = 0, l = SLIDERS.values().length; i < l; i++) {
-            sliderValues[i] = new Slider(i,parent);
-        }
-        for (int i = 0, l = PADS.values().length; i < l; i++) {
-            padValues[i] = new Pad(i,parent);
-        }
-        infos = CoreMidiDeviceProvider.getMidiDeviceInfo();
-        for (javax.sound.midi.MidiDevice.Info info : infos) {
-            javax.sound.midi.MidiDevice device = MidiSystem.getMidiDevice(info);
-            if (this.debug)
-                System.out.printf("Device: %s \t Receivers: %d \t Transmitters: %d%n", info, device.getMaxReceivers(), device.getMaxTransmitters());
-            if ((deviceName != null && info.getName().endsWith(deviceName)) || info.getName().endsWith(DEVICE_NAME_SUFFIX)) {
-                if (device.getMaxReceivers() == 0) {
-                    deviceIn = device;
-                    println("Connected to MIDI Input.");
-                } else if (device.getMaxTransmitters() == 0) {
-                    println("Connected to MIDI Output.");
-                    deviceOut = device;
-                }
-            }
-        }
+        this(parent, debug, deviceName, SystemMidiDevices.INSTANCE);
+    }
 
+    /***
+     * @param parent The sketch.
+     * @param debug True to print debug messages.
+     * @param deviceName The end of the name of the device, or null to use {@link #DEVICE_NAME_SUFFIX}.
+     * @param devices The provider of the MIDI devices to look the controller up in.
+     */
+    public LaunchControlXL(PApplet parent, boolean debug, String deviceName, MidiDeviceProvider devices) throws MidiUnavailableException {
+        this(parent, debug, DevicePorts.first(devices, debug, deviceName, DEVICE_NAME_SUFFIX), null);
+        watchable(devices, deviceName, DEVICE_NAME_SUFFIX);
         if (deviceIn == null) {
             if (deviceName == null)
                 System.out.printf("A device with name ending with %s was not detected.\n",DEVICE_NAME_SUFFIX);
             else
                 System.out.printf("A device with name you provided was not detected.\nCheck the device name: %s \n", deviceName);
-            return;
         }
+    }
 
-        try {
-            controllerChangedEventMethod =
-                    parent.getClass().getMethod(controlChangedEventName);
-        } catch (Exception e) {
-            // no such method, or an error, which is fine, just ignore
-        }
+    /***
+     * Returns immediately, and looks the controller up and connects to it in a background thread,
+     * so that `setup()` is not delayed while the MIDI devices are listed. Controls can be configured
+     * and attached to variables meanwhile; see {@link #isConnected()}.
+     * @param parent The sketch.
+     * @param onConnected Called once the controller is connected, or null.
+     */
+    public LaunchControlXL(PApplet parent, ConnectionListener onConnected) throws MidiUnavailableException {
+        this(parent, SystemMidiDevices.INSTANCE, onConnected);
+    }
 
-        try {
-            knobChangedEventMethod =
-                    parent.getClass().getMethod(knobChangedEventName, KNOBS.class);
-        } catch (Exception e) {
-            // no such method, or an error, which is fine, just ignore
-        }
+    /***
+     * Returns immediately, and connects in a background thread to a controller provided by the given devices.
+     * @param parent The sketch.
+     * @param devices The provider of the MIDI devices to look the controller up in.
+     * @param onConnected Called once the controller is connected, or null.
+     */
+    public LaunchControlXL(PApplet parent, MidiDeviceProvider devices, ConnectionListener onConnected) throws MidiUnavailableException {
+        this(parent, false, (DevicePorts) null, null);
+        watchable(devices, DEVICE_NAME_SUFFIX);
+        if (onConnected != null)
+            addConnectionListener(onConnected);
+        connectAsync();
+    }
 
-        try {
-            sliderChangedEventMethod =
-                    parent.getClass().getMethod(sliderChangedEventName, SLIDERS.class);
-        } catch (Exception e) {
-            // no such method, or an error. which is fine, just ignore
+    /***
+     * Connects to the given ports of a controller.
+     * @param ports The ports of the controller, or null if no controller was found.
+     * @param dispatcher The thread handling the messages of several controllers, or null to handle
+     *                   the messages in the thread delivering them.
+     */
+    LaunchControlXL(PApplet parent, boolean debug, DevicePorts ports, SharedDispatcher dispatcher) throws MidiUnavailableException {
+        super(parent,debug);
+        this.parent = parent;
+        state = new ControlState(knobValues.length, sliderValues.length, padValues.length);
+        for (int i = 0; i < knobValues.length; i++) {
+            knobValues[i] = new Knob(i, parent, state, i);
         }
-        
-        try {
-            padChangedEventMethod =
-                    parent.getClass().getMethod(padChangedEventName, PADS.class);
-        } catch (Exception e) {
-            // no such method, or an error.. which is fine, just ignore
+        for (int i = 0; i < sliderValues.length; i++) {
+            sliderValues[i] = new Slider(i, parent, state, knobValues.length + i);
+        }
+        for (int i = 0; i < padValues.length; i++) {
+            padValues[i] = new Pad(i, parent, state, i, this);
+        }
+        if (ports != null) {
+            deviceIn = ports.input;
+            deviceOut = ports.output;
+            println("Connected to MIDI Input.");
+            if (deviceOut != null)
+                println("Connected to MIDI Output.");
         }
 
-        if (controllerChangedEventMethod == null
-        		&& knobChangedEventMethod == null
-                && sliderChangedEventName == null
-                && padChangedEventMethod == null) {
+        receiver = new LaunchControlDeviceReceiver(this, deviceOut, LAYOUT);
+        if (!addSketchListeners()) {
             println("WARNING! This sketch is not tracking any changes to the Launch Control XL. Make sure you sketch includes at least one of the following:");
-            println("   void " + controlChangedEventName + "()");
-            println("   void " + padChangedEventName + "(PADS pad)");
-            println("   void " + knobChangedEventMethod + "(KNOBS knob)");
+            println("   void " + SketchEvents.CONTROLLER_CHANGED + "()");
+            println("   void " + SketchEvents.PAD_CHANGED + "(PADS pad)");
+            println("   void " + SketchEvents.KNOB_CHANGED + "(KNOBS knob)");
+            println("   void " + SketchEvents.SLIDER_CHANGED + "(SLIDERS slider)");
 
         }
 
-        deviceIn.open();
-        deviceOut.open();
+        if (deviceIn == null)
+            return;
+
+        connect(dispatcher);
+        resetDevice();
+        startupFinished(ports);
 
-        receiver = new LaunchControlDeviceReceiver(this, deviceOut);
-        deviceIn.getTransmitter().setReceiver(receiver);
-        deviceOut.getReceiver().send(getResetMessage(), 0);
-        
         setPadMode(PADMODE.TOGGLE);
 
     }
+
+    @Override
+    void resetDevice() {
+        receiver.sendMessage(getResetMessage());
+    }
     
     /***
      * Enable or disable debug messages
@@ -182,203 +195,34 @@ public class LaunchControlXL extends MidiController implements MidiDevice {
 
     @Override
     public boolean isKnobMessage(MidiMessage message) {
-        return (message.getMessage()[0] == -80);
+        int type = ControlLayout.type(LAYOUT.decode(message));
+        return type == ControlLayout.KNOB || type == ControlLayout.SLIDER;
     }
 
     @Override
     public void setKnobPosition(MidiMessage message) {
-        byte[] msgBytes = message.getMessage();
-        switch (msgBytes[1]) {
-            case 13:
-                setKnobPosition(KNOBS.KNOB_01, msgBytes[2]);
-                break;
-            case 14:
-                setKnobPosition(KNOBS.KNOB_02, msgBytes[2]);
-                break;
-            case 15:
-                setKnobPosition(KNOBS.KNOB_03, msgBytes[2]);
-                break;
-            case 16:
-                setKnobPosition(KNOBS.KNOB_04, msgBytes[2]);
-                break;
-            case 17:
-                setKnobPosition(KNOBS.KNOB_05, msgBytes[2]);
-                break;
-            case 18:
-                setKnobPosition(KNOBS.KNOB_06, msgBytes[2]);
-                break;
-            case 19:
-                setKnobPosition(KNOBS.KNOB_07, msgBytes[2]);
-                break;
-            case 20:
-                setKnobPosition(KNOBS.KNOB_08, msgBytes[2]);
-                break;
-            case 29:
-                setKnobPosition(KNOBS.KNOB_09, msgBytes[2]);
-                break;
-            case 30:
-                setKnobPosition(KNOBS.KNOB_10, msgBytes[2]);
-                break;
-            case 31:
-                setKnobPosition(KNOBS.KNOB_11, msgBytes[2]);
-                break;
-            case 32:
-                setKnobPosition(KNOBS.KNOB_12, msgBytes[2]);
+        int control = LAYOUT.decode(message);
+        switch (ControlLayout.type(control)) {
+            case ControlLayout.KNOB:
+                setKnobPosition(ControlLayout.KNOB_VALUES[ControlLayout.index(control)], ControlLayout.data2(message));
                 break;
-            case 33:
-                setKnobPosition(KNOBS.KNOB_13, msgBytes[2]);
-                break;
-            case 34:
-                setKnobPosition(KNOBS.KNOB_14, msgBytes[2]);
-                break;
-            case 35:
-                setKnobPosition(KNOBS.KNOB_15, msgBytes[2]);
-                break;
-            case 36:
-                setKnobPosition(KNOBS.KNOB_16, msgBytes[2]);
-                break;
-            case 49:
-                setKnobPosition(KNOBS.KNOB_17, msgBytes[2]);
-                break;
-            case 50:
-                setKnobPosition(KNOBS.KNOB_18, msgBytes[2]);
-                break;
-            case 51:
-                setKnobPosition(KNOBS.KNOB_19, msgBytes[2]);
-                break;
-            case 52:
-                setKnobPosition(KNOBS.KNOB_20, msgBytes[2]);
-                break;
-            case 53:
-                setKnobPosition(KNOBS.KNOB_21, msgBytes[2]);
-                break;
-            case 54:
-                setKnobPosition(KNOBS.KNOB_22, msgBytes[2]);
-                break;
-            case 55:
-                setKnobPosition(KNOBS.KNOB_23, msgBytes[2]);
-                break;
-            case 56:
-                setKnobPosition(KNOBS.KNOB_24, msgBytes[2]);
-                break;
-            case 77:
-                setSliderPosition(SLIDERS.SLIDER_1, msgBytes[2]);
-                break;
-            case 78:
-                setSliderPosition(SLIDERS.SLIDER_2, msgBytes[2]);
-                break;
-            case 79:
-                setSliderPosition(SLIDERS.SLIDER_3, msgBytes[2]);
-                break;
-            case 80:
-                setSliderPosition(SLIDERS.SLIDER_4, msgBytes[2]);
-                break;
-            case 81:
-                setSliderPosition(SLIDERS.SLIDER_5, msgBytes[2]);
-                break;
-            case 82:
-                setSliderPosition(SLIDERS.SLIDER_6, msgBytes[2]);
-                break;
-            case 83:
-                setSliderPosition(SLIDERS.SLIDER_7, msgBytes[2]);
-                break;
-            case 84:
-                setSliderPosition(SLIDERS.SLIDER_8, msgBytes[2]);
+            case ControlLayout.SLIDER:
+                setSliderPosition(ControlLayout.SLIDER_VALUES[ControlLayout.index(control)], ControlLayout.data2(message));
                 break;
         }
     }
 
     @Override
     public boolean isPad(MidiMessage message) {
-        return (message.getMessage()[0] == -112 || message.getMessage()[0] == -128);
+        return ControlLayout.type(LAYOUT.decode(message)) == ControlLayout.PAD;
     }
 
     @Override
     public PADS getPadFromMessage(MidiMessage message) {
-        byte[] msgBytes = message.getMessage();
-        PADS pad = null;
-
-        switch (msgBytes[1]) {
-            case 41:
-                if (msgBytes[2] == 127)
-                    pad = PADS.PAD_1;
-                break;
-            case 42:
-                if (msgBytes[2] == 127) {
-                    pad = PADS.PAD_2;
-                }
-                break;
-            case 43:
-                if (msgBytes[2] == 127) {
-                    pad = PADS.PAD_3;
-                }
-                break;
-            case 44:
-                if (msgBytes[2] == 127) {
-                    pad = PADS.PAD_4;
-                }
-                break;
-            case 57:
-                if (msgBytes[2] == 127) {
-                    pad = PADS.PAD_5;
-                }
-                break;
-            case 58:
-                if (msgBytes[2] == 127) {
-                    pad = PADS.PAD_6;
-                }
-                break;
-            case 59:
-                if (msgBytes[2] == 127) {
-                    pad = PADS.PAD_7;
-                }
-                break;
-            case 60:
-                if (msgBytes[2] == 127) {
-                    pad = PADS.PAD_8;
-                }
-                break;
-            case 73:
-                if (msgBytes[2] == 127)
-                    pad = PADS.PAD_9;
-                break;
-            case 74:
-                if (msgBytes[2] == 127) {
-                    pad = PADS.PAD_10;
-                }
-                break;
-            case 75:
-                if (msgBytes[2] == 127) {
-                    pad = PADS.PAD_11;
-                }
-                break;
-            case 76:
-                if (msgBytes[2] == 127) {
-                    pad = PADS.PAD_12;
-                }
-                break;
-            case 89:
-                if (msgBytes[2] == 127) {
-                    pad = PADS.PAD_13;
-                }
-                break;
-            case 90:
-                if (msgBytes[2] == 127) {
-                    pad = PADS.PAD_14;
-                }
-                break;
-            case 91:
-                if (msgBytes[2] == 127) {
-                    pad = PADS.PAD_15;
-                }
-                break;
-            case 92:
-                if (msgBytes[2] == 127) {
-                    pad = PADS.PAD_16;
-                }
-                break;
-        }
-        return pad;
+        int control = LAYOUT.decode(message);
+        if (ControlLayout.type(control) != ControlLayout.PAD || ControlLayout.data2(message) != 127)
+            return null;
+        return ControlLayout.PAD_VALUES[ControlLayout.index(control)];
     }
 
     // ****** KNOBS ****** //
@@ -398,9 +242,7 @@ public class LaunchControlXL extends MidiController implements MidiDevice {
 
     @Override
     public void setKnobPosition(KNOBS knob, int position) {
-        int curPosition = knobValues[knob.code()].position();
-        int newPosition = knobValues[knob.code()].position(position).position();
-        if (newPosition != curPosition) {
+        if (knobValues[knob.code()].move(position)) {
             midiLaunchControlChanged();
             if (debug) System.out.println("setKnobPosition called for knob " +
             		knob.code() +
@@ -441,9 +283,7 @@ public class LaunchControlXL extends MidiController implements MidiDevice {
 
     @Override
     public void setSliderPosition(SLIDERS slider, int position) {
-        int curPosition = sliderValues[slider.code()].position();
-        int newPosition = sliderValues[slider.code()].position(position).position();
-        if (newPosition != curPosition) {
+        if (sliderValues[slider.code()].move(position)) {
             midiLaunchControlChanged();
             if (debug) System.out.println("setSliderPosition called for slider " +
             		slider.code() +
@@ -497,7 +337,7 @@ public class LaunchControlXL extends MidiController implements MidiDevice {
     public void setPad(PADS pad, boolean value, boolean disableEvents) {
         if (padValues[pad.code()].value() != value) {
             padValues[pad.code()].value(value);
-            receiver.sendLedOnOff(value, pad);
+            receiver.setLed(pad, value);
             if(!disableEvents) {
                 midiLaunchControlChanged();
                 padChanged(pad);
@@ -514,6 +354,7 @@ public class LaunchControlXL extends MidiController implements MidiDevice {
     public void invertPad(PADS pad) {
         boolean curValue = padValues[pad.code()].value();
         padValues[pad.code()].value(!curValue);
+        receiver.setLed(pad, !curValue);
         midiLaunchControlChanged();
         padChanged(pad);
     }
@@ -538,65 +379,6 @@ public class LaunchControlXL extends MidiController implements MidiDevice {
 
 
 
-    // ****** EVENTS ****** //
-
-    public void midiLaunchControlChanged() {
-        if (controllerChangedEventMethod != null) {
-            try {
-                //controllerChangedEventMethod.invoke(parent, new Object[]{this});
-                controllerChangedEventMethod.invoke(parent);
-            } catch (Exception e) {
-                System.err.println("Disabling controllerChangedEventMethod() for " + this.getClass().getName() +
-                        " because of an error.");
-                e.printStackTrace();
-                controllerChangedEventMethod = null;
-            }
-        }
-    }
-
-    public void knobChanged(KNOBS knob) {
-        if (knobChangedEventMethod != null) {
-            try {
-                //controllerChangedEventMethod.invoke(parent, new Object[]{this});
-                knobChangedEventMethod.invoke(parent, knob);
-            } catch (Exception e) {
-                System.err.println("Disabling " + knobChangedEventMethod + "() for " + this.getClass().getName() +
-                        " because of an error.");
-                e.printStackTrace();
-                knobChangedEventMethod = null;
-            }
-        }
-    }
-
-    public void sliderChanged(SLIDERS slider) {
-        if (sliderChangedEventMethod != null) {
-            try {
-                //controllerChangedEventMethod.invoke(parent, new Object[]{this});
-                sliderChangedEventMethod.invoke(parent, slider);
-            } catch (Exception e) {
-                System.err.println("Disabling " + sliderChangedEventMethod + "() for " + this.getClass().getName() +
-                        " because of an error.");
-                e.printStackTrace();
-                sliderChangedEventMethod = null;
-            }
-        }
-    }
-
-
-    public void padChanged(PADS pad) {
-        if (padChangedEventMethod != null) {
-            try {
-                //controllerChangedEventMethod.invoke(parent, new Object[]{this});
-                padChangedEventMethod.invoke(parent, pad);
-            } catch (Exception e) {
-                System.err.println("Disabling " + padChangedEventName + "() for " + this.getClass().getName() +
-                        " because of an error.");
-                e.printStackTrace();
-                padChangedEventMethod = null;
-            }
-        }
-    }
-
     private static MidiMessage getResetMessage() {
         try {
             return new ShortMessage(184, 0, 0);
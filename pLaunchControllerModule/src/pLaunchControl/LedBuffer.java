@@ -0,0 +1,138 @@
+package pLaunchControl;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.SysexMessage;
+import java.util.Arrays;
+
+/**
+ * The state of the pad lights of a device, with a byte per LED holding the velocity
+ * (colour and brightness, see {@link LedConstants}) to display, and a copy of the last state sent.
+ * Changing a LED only updates the buffer; {@link #flush(Receiver)} then sends the LEDs that changed
+ * since the previous flush, grouping several LEDs in a single System Exclusive message
+ * where the device supports it. The message sent is reused, so flushing does not allocate.
+ */
+final class LedBuffer {
+
+    private static final byte TEMPLATE = 0x08;
+    private static final int HEADER_LENGTH = 8;
+    private static final byte UNKNOWN = -1;
+
+    private final ControlLayout layout;
+    private final byte[] leds;
+    private final byte[] sent;
+
+    private final byte[] data;
+    private final SysexMessage message = new SysexMessage();
+
+    /**
+     * How many LED changes replaced a previous change not sent yet.
+     */
+    private long merged;
+
+    LedBuffer(ControlLayout layout) {
+        this.layout = layout;
+        this.leds = new byte[layout.padCount()];
+        this.sent = new byte[layout.padCount()];
+        Arrays.fill(leds, LedConstants.OFF);
+        Arrays.fill(sent, UNKNOWN);
+
+        //Hex version F0h 00h 20h 29h 02h [Device] 78h [Template] [LED] [Value] ... F7h
+        //Where Device is 0Ah for Launch Control and 11h for Launch Control XL; Template is 00h-07h (0-7)
+        //for the 8 user templates, and 08h-0Fh (8-15) for the 8 factory templates; LED is the index of the
+        //pad/button; and Value is the velocity byte that defines the brightness values of both the red
+        //and green LEDs. Launch Control XL accepts several LED/Value pairs in a single message.
+        data = new byte[HEADER_LENGTH + 2 * layout.ledsPerMessage() + 1];
+        data[0] = (byte) 0xF0;
+        data[1] = 0x00;
+        data[2] = 0x20;
+        data[3] = 0x29;
+        data[4] = 0x02;
+        data[5] = layout.ledDevice();
+        data[6] = 0x78;
+        data[7] = TEMPLATE;
+    }
+
+    /**
+     * Sets the velocity to display in the LED of a pad, to be sent in the next {@link #flush(Receiver)}.
+     */
+    synchronized void set(int pad, byte velocity) {
+        if (leds[pad] != sent[pad] && leds[pad] != velocity)
+            merged++;
+        leds[pad] = velocity;
+    }
+
+    synchronized byte get(int pad) {
+        return leds[pad];
+    }
+
+    /**
+     * Forgets the state last sent, so that the next flush sends all LEDs again.
+     */
+    synchronized void invalidate() {
+        Arrays.fill(sent, UNKNOWN);
+    }
+
+    /**
+     * Sends the LEDs changed since the last flush.
+     * @param out The receiver of the device output.
+     * @return The number of messages sent.
+     */
+    int flush(Receiver out) {
+        return flush(out, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Sends the LEDs changed since the last flush, in at most maxMessages messages.
+     * LEDs left out are sent in the next flush.
+     * @param out The receiver of the device output.
+     * @param maxMessages The maximum number of messages to send.
+     * @return The number of messages sent.
+     */
+    synchronized int flush(Receiver out, int maxMessages) {
+        int messages = 0;
+        int pairs = 0;
+        for (int i = 0; i < leds.length && messages < maxMessages; i++) {
+            if (leds[i] == sent[i])
+                continue;
+            data[HEADER_LENGTH + 2 * pairs] = (byte) (layout.padLedOffset() + i);
+            data[HEADER_LENGTH + 2 * pairs + 1] = leds[i];
+            sent[i] = leds[i];
+            if (++pairs == layout.ledsPerMessage()) {
+                send(out, pairs);
+                messages++;
+                pairs = 0;
+            }
+        }
+        if (pairs > 0) {
+            send(out, pairs);
+            messages++;
+        }
+        return messages;
+    }
+
+    /**
+     * @return True if some LEDs changed since the last flush.
+     */
+    synchronized boolean pending() {
+        for (int i = 0; i < leds.length; i++)
+            if (leds[i] != sent[i])
+                return true;
+        return false;
+    }
+
+    synchronized long merged() {
+        return merged;
+    }
+
+    private void send(Receiver out, int pairs) {
+        int length = HEADER_LENGTH + 2 * pairs + 1;
+        data[length - 1] = (byte) 0xF7;
+        try {
+            message.setMessage(data, length);
+            out.send(message, -1);
+        } catch (InvalidMidiDataException e) {
+            System.out.println("Error sending Midi message: " + e);
+        }
+    }
+}
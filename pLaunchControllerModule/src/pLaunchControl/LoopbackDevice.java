@@ -0,0 +1,232 @@
+package pLaunchControl;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Transmitter;
+import javax.sound.midi.spi.MidiDeviceProvider;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A virtual controller living inside the sketch, for running the library without the hardware,
+ * for instance in tests, benchmarks or on a computer without MIDI devices.</p>
+ * <p>The loopback device provides a MIDI input and a MIDI output port, named like the controller,
+ * to be given to the constructor of {@link LaunchControl} or {@link LaunchControlXL}:</p>
+ * <p>{@code
+ * LoopbackDevice loopback = new LoopbackDevice(LaunchControlXL.DEVICE_NAME_SUFFIX);
+ * LaunchControlXL controller = new LaunchControlXL(this, loopback);
+ * }</p>
+ * <p>Messages given to {@link #send(int, int, int)} are delivered to the library as if a knob, slider or pad
+ * of the controller was moved, and messages sent by the library, such as the pad lights, are passed to
+ * the receiver set with {@link #setOutputReceiver(Receiver)}.</p>
+ */
+public final class LoopbackDevice extends MidiDeviceProvider {
+
+    private final Port input;
+    private final Port output;
+    private final ShortMessage message = new ShortMessage();
+
+    private volatile Receiver inputReceiver;
+    private volatile Receiver outputReceiver;
+    private final AtomicLong outputCount = new AtomicLong();
+    private volatile boolean plugged = true;
+
+    /**
+     * @param name The name of the device. The controllers look for a device with a name ending with
+     *             {@link LaunchControl#DEVICE_NAME_SUFFIX} or {@link LaunchControlXL#DEVICE_NAME_SUFFIX}.
+     */
+    public LoopbackDevice(String name) {
+        input = new Port(new Info(name, "Loopback MIDI input"), true);
+        output = new Port(new Info(name, "Loopback MIDI output"), false);
+    }
+
+    @Override
+    public javax.sound.midi.MidiDevice.Info[] getDeviceInfo() {
+        if (!plugged)
+            return new javax.sound.midi.MidiDevice.Info[0];
+        return new javax.sound.midi.MidiDevice.Info[]{input.getDeviceInfo(), output.getDeviceInfo()};
+    }
+
+    @Override
+    public javax.sound.midi.MidiDevice getDevice(javax.sound.midi.MidiDevice.Info info) {
+        if (info == input.getDeviceInfo())
+            return input;
+        if (info == output.getDeviceInfo())
+            return output;
+        throw new IllegalArgumentException("MIDI device not provided by the loopback device: " + info);
+    }
+
+    /**
+     * Delivers a message to the library, as if it was sent by the controller.
+     * Messages sent before the library opens the input port are dropped.
+     * @return False if the message was dropped.
+     */
+    public boolean send(MidiMessage message) {
+        Receiver receiver = inputReceiver;
+        if (receiver == null || !input.isOpen())
+            return false;
+        receiver.send(message, -1);
+        return true;
+    }
+
+    /**
+     * Delivers a short message to the library, as if it was sent by the controller.
+     * The message object is reused, so sending does not allocate; this method must then
+     * be called from a single thread.
+     * @param status For instance {@code 0xB0} for a control change and {@code 0x90} for a note on, on channel 1.
+     * @param data1 The controller number of a knob or slider, or the note number of a pad.
+     * @param data2 The position of a knob or slider, or the velocity of a pad.
+     * @return False if the message was dropped.
+     */
+    public boolean send(int status, int data1, int data2) {
+        try {
+            message.setMessage(status, data1, data2);
+        } catch (InvalidMidiDataException e) {
+            throw new IllegalArgumentException("Invalid MIDI message: " + e.getMessage(), e);
+        }
+        return send(message);
+    }
+
+    /**
+     * Simulates unplugging or plugging in the controller. While unplugged, the device is not listed,
+     * its ports are closed, and messages are dropped.
+     * @param plugged False to unplug the controller.
+     */
+    public void setPlugged(boolean plugged) {
+        this.plugged = plugged;
+        if (!plugged) {
+            input.close();
+            output.close();
+        }
+    }
+
+    /**
+     * Sets the receiver of the messages sent by the library to the device. Messages may be reused by
+     * the library once sent, so a receiver keeping them must keep a {@link MidiMessage#clone() clone}.
+     * @param receiver The receiver, or null to discard the messages.
+     */
+    public void setOutputReceiver(Receiver receiver) {
+        outputReceiver = receiver;
+    }
+
+    /**
+     * @return The number of messages sent by the library to the device.
+     */
+    public long getOutputCount() {
+        return outputCount.get();
+    }
+
+    private static final class Info extends javax.sound.midi.MidiDevice.Info {
+        Info(String name, String description) {
+            super(name, "pLaunchControl", description, "1.0");
+        }
+    }
+
+    /**
+     * One side of the loopback device. Like the ports of the hardware controller, the input port
+     * only has a transmitter and the output port only has a receiver.
+     */
+    private final class Port implements javax.sound.midi.MidiDevice {
+
+        private final Info info;
+        private final boolean isInput;
+        private volatile boolean open;
+
+        Port(Info info, boolean isInput) {
+            this.info = info;
+            this.isInput = isInput;
+        }
+
+        @Override
+        public Info getDeviceInfo() {
+            return info;
+        }
+
+        @Override
+        public void open() {
+            open = plugged;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public long getMicrosecondPosition() {
+            return -1;
+        }
+
+        @Override
+        public int getMaxReceivers() {
+            return isInput ? 0 : -1;
+        }
+
+        @Override
+        public int getMaxTransmitters() {
+            return isInput ? -1 : 0;
+        }
+
+        @Override
+        public Receiver getReceiver() throws MidiUnavailableException {
+            if (isInput)
+                throw new MidiUnavailableException("The loopback input port has no receivers.");
+            return new Receiver() {
+                @Override
+                public void send(MidiMessage message, long timeStamp) {
+                    if (!open)
+                        return;
+                    outputCount.incrementAndGet();
+                    Receiver receiver = outputReceiver;
+                    if (receiver != null)
+                        receiver.send(message, timeStamp);
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        @Override
+        public List<Receiver> getReceivers() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Transmitter getTransmitter() throws MidiUnavailableException {
+            if (!isInput)
+                throw new MidiUnavailableException("The loopback output port has no transmitters.");
+            return new Transmitter() {
+                @Override
+                public void setReceiver(Receiver receiver) {
+                    inputReceiver = receiver;
+                }
+
+                @Override
+                public Receiver getReceiver() {
+                    return inputReceiver;
+                }
+
+                @Override
+                public void close() {
+                    inputReceiver = null;
+                }
+            };
+        }
+
+        @Override
+        public List<Transmitter> getTransmitters() {
+            return Collections.emptyList();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package pLaunchControl;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static processing.core.PApplet.println;
+
+/**
+ * A mapping file, read and compiled into a {@link ControlMapping}, and watched for changes from a background thread.
+ * A changed file is compiled by the watcher thread, and the compiled mapping is handed over to the animation thread,
+ * which applies it at the start of the next frame. A file with errors is reported and ignored, keeping the mapping
+ * applied before.
+ */
+final class MappingFile implements Runnable {
+
+    static final int DEFAULT_PERIOD = 1000;
+
+    private final Path file;
+    private final Object sketch;
+    private final ControlState state;
+    private final AtomicReference<ControlMapping> pending = new AtomicReference<>();
+
+    /**
+     * The mapping applied last, only used by the animation thread.
+     */
+    private ControlMapping applied;
+
+    private volatile boolean running;
+    private Thread thread;
+    private long signature;
+
+    MappingFile(Path file, Object sketch, ControlState state) {
+        this.file = file;
+        this.sketch = sketch;
+        this.state = state;
+    }
+
+    /**
+     * Reads and compiles the file. The mapping is applied by the next call to {@link #apply(MidiDevice)}.
+     * @throws IllegalArgumentException If the file has errors, see {@link ControlMapping#compile(Properties, Object, ControlState)}.
+     */
+    void load() throws IOException {
+        signature = signature();
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        pending.set(ControlMapping.compile(properties, sketch, state));
+    }
+
+    /**
+     * Applies the mapping compiled since the last call, if any. Called by the animation thread.
+     * @return True if a mapping was applied.
+     */
+    boolean apply(MidiDevice device) {
+        ControlMapping mapping = pending.getAndSet(null);
+        if (mapping == null)
+            return false;
+        mapping.apply(applied, state, device);
+        applied = mapping;
+        return true;
+    }
+
+    /**
+     * Checks the file for changes in a new thread.
+     * @param periodMillis The time between two checks, in milliseconds.
+     */
+    void watch(int periodMillis) {
+        long periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+        running = true;
+        thread = new Thread(() -> {
+            while (running) {
+                LockSupport.parkNanos(this, periodNanos);
+                if (running)
+                    run();
+            }
+        }, "pLaunchControl mapping watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void stop() {
+        running = false;
+        if (thread != null)
+            LockSupport.unpark(thread);
+    }
+
+    /**
+     * Reloads the file if it changed since it was last read.
+     */
+    @Override
+    public void run() {
+        long current;
+        try {
+            current = signature();
+        } catch (IOException e) {
+            // the file is being replaced; check again later
+            return;
+        }
+        if (current == signature)
+            return;
+        try {
+            load();
+            println("The mapping was reloaded.");
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("LaunchControl Error: the mapping " + file.getFileName() + " was not reloaded. Error message: " + e.getMessage());
+        }
+    }
+
+    private long signature() throws IOException {
+        return Files.getLastModifiedTime(file).toMillis() * 31 + Files.size(file);
+    }
+}
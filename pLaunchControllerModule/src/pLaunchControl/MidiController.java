@@ -2,28 +2,954 @@ package pLaunchControl;
 
 import processing.core.PApplet;
 
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.spi.MidiDeviceProvider;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static processing.core.PApplet.println;
+
 /**
  * A generic controller in the series Launch Control, containing shared functionality
  * for initialization and shut-down operations.
  */
 public abstract class MidiController {
     public boolean debug;
-    javax.sound.midi.MidiDevice deviceIn;
-    javax.sound.midi.MidiDevice deviceOut;
+    volatile javax.sound.midi.MidiDevice deviceIn;
+    volatile javax.sound.midi.MidiDevice deviceOut;
     PApplet parent;
+    LaunchControlDeviceReceiver receiver;
+    ControlState state;
+    private SessionPlayer player;
+    private DeviceWatcher watcher;
+    private final Object watcherLock = new Object();
+    private boolean showStats;
+
+    /**
+     * The automation lanes of the controls, or null until {@link #automation()} is first called.
+     */
+    volatile Automation automation;
+
+    /**
+     * The preset bank of the controller, or null until {@link #presets(String)} is called.
+     */
+    volatile PresetBank presets;
+
+    /**
+     * The mapping file of the controller, or null until {@link #loadMapping(String)} is called.
+     */
+    private volatile MappingFile mapping;
+
+    /**
+     * Where the controller was found, and the accepted ends of its name, to find it again after it was
+     * unplugged. Null for controllers that can not be told apart from other identical units.
+     */
+    private MidiDeviceProvider devices;
+    private String[] deviceNames;
+
+    /**
+     * The thread applying a batch of changes, see {@link #beginBatch()}. Only events triggered by that thread are held,
+     * so that pads handled meanwhile by the thread receiving the messages always trigger their events.
+     */
+    private volatile Thread batchThread;
+    private boolean changedInBatch;
+
+    // Listeners are kept in arrays replaced on every change, so that events can be
+    // triggered from any thread without locking or allocating.
+    private volatile ControllerListener[] controllerListeners = new ControllerListener[0];
+    private volatile KnobListener[] knobListeners = new KnobListener[0];
+    private volatile SliderListener[] sliderListeners = new SliderListener[0];
+    private volatile PadListener[] padListeners = new PadListener[0];
+    private volatile ConnectionListener[] connectionListeners = new ConnectionListener[0];
+
+    private final long createdAt = System.nanoTime();
+    private volatile long startupNanos = -1;
+    private Thread connecting;
 
     public MidiController(PApplet parent, boolean debug) {
         parent.registerMethod("dispose", this);
+        parent.registerMethod("pre", this);
+        parent.registerMethod("post", this);
         this.debug = debug;
         this.parent = parent;
     }
 
+    /***
+     * Enables or disables queueing of controller events. By default, knobs, sliders and pads
+     * are updated, and events are triggered, as soon as the MIDI message arrives, in a thread
+     * other than the sketch's animation thread. When queueing is enabled, messages are
+     * stored and handled at the start of the next frame, before `draw()` is called,
+     * so that variables do not change while a frame is being drawn. Events still queued when
+     * queueing is disabled are handled at the start of the next frame, and so are the events
+     * arriving until then, so that all events are handled in the order they arrived.
+     * @param queueEvents True to handle events at the start of each frame.
+     */
+    public void queueEvents(boolean queueEvents) {
+        queueEvents(queueEvents, EventQueue.DEFAULT_CAPACITY);
+    }
+
+    /***
+     * Enables or disables queueing of controller events. See {@link #queueEvents(boolean)}.
+     * @param queueEvents True to handle events at the start of each frame.
+     * @param capacity Maximum number of events kept between two frames. Further events are dropped.
+     *                 Calling this method again with another capacity replaces the queue.
+     */
+    public void queueEvents(boolean queueEvents, int capacity) {
+        if (receiver == null)
+            return;
+        EventQueue queue = receiver.queue;
+        if (queueEvents) {
+            if (queue == null || queue.capacity() != EventQueue.size(capacity))
+                receiver.replaceQueue(new EventQueue(capacity));
+        } else if (queue != null) {
+            receiver.replaceQueue(null);
+        }
+    }
+
+    /***
+     * @return True if controller events are handled at the start of each frame.
+     */
+    public boolean queueEvents() {
+        return receiver != null && receiver.queue != null;
+    }
+
+    /***
+     * @return The number of events dropped because too many arrived between two frames,
+     * when events are queued.
+     */
+    public long getDroppedEvents() {
+        EventQueue queue = receiver == null ? null : receiver.queue;
+        return queue == null ? 0 : queue.dropped();
+    }
+
+    /***
+     * Enables or disables measuring the latency of controller messages, from their arrival until
+     * the sketch sees the new value. See {@link #getStats()}. Measuring costs a few calls to
+     * {@link System#nanoTime()} per message, and is disabled by default.
+     * @param instrument True to measure latencies.
+     */
+    public void instrument(boolean instrument) {
+        if (receiver == null)
+            return;
+        if (!instrument)
+            receiver.stats = null;
+        else if (receiver.stats == null)
+            receiver.stats = new LatencyStats();
+    }
+
+    /***
+     * @return The latencies measured since {@link #instrument(boolean)} was enabled or the statistics were reset,
+     * the number of events per second, and the time taken to connect to the controller.
+     */
+    public ControllerStats getStats() {
+        return new ControllerStats(receiver == null ? null : receiver.stats, getDroppedEvents(), getStartupMillis());
+    }
+
+    /***
+     * Clears the measured latencies and the number of events.
+     */
+    public void resetStats() {
+        LatencyStats stats = receiver == null ? null : receiver.stats;
+        if (stats != null)
+            stats.reset();
+    }
+
+    /***
+     * Shows or hides the statistics of {@link #getStats()} in the top-left corner of the sketch,
+     * drawn after each frame. Showing the statistics enables {@link #instrument(boolean)}.
+     * @param showStats True to show the statistics.
+     */
+    public void showStats(boolean showStats) {
+        if (showStats == this.showStats)
+            return;
+        this.showStats = showStats;
+        if (showStats) {
+            instrument(true);
+            parent.registerMethod("draw", this);
+        } else {
+            parent.unregisterMethod("draw", this);
+        }
+    }
+
+    /***
+     * Draws the statistics overlay, when enabled with {@link #showStats(boolean)}.
+     * Called by Processing after `draw()`.
+     */
+    public void draw() {
+        String text = getStats().toString();
+        parent.pushStyle();
+        parent.pushMatrix();
+        parent.resetMatrix();
+        parent.noStroke();
+        parent.fill(0, 180);
+        parent.rect(0, 0, 330, 95);
+        parent.fill(255);
+        parent.textSize(12);
+        parent.textAlign(PApplet.LEFT, PApplet.TOP);
+        parent.text(text, 6, 4);
+        parent.popMatrix();
+        parent.popStyle();
+    }
+
+    /***
+     * Sets how pads in {@link PADMODE#LONG_PRESS} and {@link PADMODE#DOUBLE_TAP} modes are timed. Presses and releases
+     * are timed with the timestamps of the MIDI messages when the device provides them. A pad held for the long-press
+     * time changes at the start of the next frame, without waiting for its release.
+     * @param longPressSeconds The time a pad must be held to make a long press, 0.5 seconds by default.
+     * @param doubleTapSeconds The longest time between two pushes making a double tap, 0.3 seconds by default.
+     */
+    public void padTiming(float longPressSeconds, float doubleTapSeconds) {
+        if (receiver != null)
+            receiver.timing.times(longPressSeconds, doubleTapSeconds);
+    }
+
+    /***
+     * Enables or disables coalescing of knob and slider changes. When enabled, a knob or slider
+     * moved several times between two frames is updated only once, with its latest position,
+     * at the start of the next frame. `LaunchControlKnobChanged` and `LaunchControlSliderChanged`
+     * are then triggered once per changed control, and `LaunchControlChanged` once per frame.
+     * Pads are never coalesced: every push is handled.
+     * @param coalesceEvents True to update knobs and sliders once per frame.
+     */
+    public void coalesceEvents(boolean coalesceEvents) {
+        if (receiver == null)
+            return;
+        if (coalesceEvents) {
+            if (receiver.changes == null)
+                receiver.changes = new CoalescedChanges();
+        } else if (receiver.changes != null) {
+            CoalescedChanges changes = receiver.changes;
+            receiver.changes = null;
+            receiver.flush(changes);
+        }
+    }
+
+    /***
+     * @return True if knob and slider changes are applied once per frame.
+     */
+    public boolean coalesceEvents() {
+        return receiver != null && receiver.changes != null;
+    }
+
+    /***
+     * Enables or disables sending messages to the device from a separate thread. By default, pad lights
+     * are sent to the device by the thread changing the pad, which can stall the sketch when the
+     * MIDI output is slow. When enabled, messages are sent by a dedicated thread at most at
+     * 1000 messages per second, and only the latest state of each
+     * pad light is sent.
+     * @param asyncOutput True to send messages from a separate thread.
+     */
+    public void asyncOutput(boolean asyncOutput) {
+        asyncOutput(asyncOutput, OutputScheduler.DEFAULT_RATE);
+    }
+
+    /***
+     * Enables or disables sending messages to the device from a separate thread. See {@link #asyncOutput(boolean)}.
+     * @param asyncOutput True to send messages from a separate thread.
+     * @param maxMessagesPerSecond The maximum number of messages sent to the device per second.
+     */
+    public void asyncOutput(boolean asyncOutput, int maxMessagesPerSecond) {
+        if (receiver == null)
+            return;
+        OutputScheduler scheduler = receiver.scheduler;
+        if (scheduler != null) {
+            receiver.scheduler = null;
+            scheduler.stop();
+        }
+        if (asyncOutput)
+            receiver.scheduler = new OutputScheduler(receiver, maxMessagesPerSecond);
+    }
+
+    /***
+     * @return The number of messages waiting to be sent to the device, when output is asynchronous.
+     */
+    public int getOutputQueueDepth() {
+        OutputScheduler scheduler = receiver == null ? null : receiver.scheduler;
+        return scheduler == null ? 0 : scheduler.queueDepth();
+    }
+
+    /***
+     * @return The number of messages not sent because the output queue was full.
+     */
+    public long getDroppedOutputMessages() {
+        OutputScheduler scheduler = receiver == null ? null : receiver.scheduler;
+        return scheduler == null ? 0 : scheduler.dropped();
+    }
+
+    /***
+     * @return The number of pad light changes replaced by a later change before being sent.
+     */
+    public long getMergedOutputMessages() {
+        return receiver == null ? 0 : receiver.leds.merged();
+    }
+
+    /***
+     * Starts recording every message received from the controller into a file, to be replayed
+     * later with {@link #replay(String, boolean)}, for example to reproduce a performance, or to
+     * test a sketch without the controller. A new recording replaces a previous file with the same name.
+     * @param fileName The name of the file, relative to the sketch folder.
+     */
+    public void startRecording(String fileName) {
+        if (receiver == null)
+            return;
+        stopRecording();
+        try {
+            receiver.recorder = new SessionRecorder(Paths.get(parent.sketchPath(fileName)));
+        } catch (IOException e) {
+            System.err.println("LaunchControl Error: it was not possible to record to " + fileName + ". Error message: " + e.getMessage());
+        }
+    }
+
+    /***
+     * Stops recording messages, and saves the recording.
+     */
+    public void stopRecording() {
+        if (receiver == null || receiver.recorder == null)
+            return;
+        SessionRecorder recorder = receiver.recorder;
+        receiver.recorder = null;
+        recorder.close();
+    }
+
+    /***
+     * Replays a recording in the background, as if the messages came from the controller,
+     * respecting the original timing. The controller itself is ignored until the replay ends.
+     * See {@link #startRecording(String)}.
+     * @param fileName The name of the file, relative to the sketch folder.
+     */
+    public void replay(String fileName) {
+        replay(fileName, true);
+    }
+
+    /***
+     * Replays a recording in the background, as if the messages came from the controller.
+     * The controller itself is ignored until the replay ends. See {@link #startRecording(String)}.
+     * @param fileName The name of the file, relative to the sketch folder.
+     * @param realTime True to respect the original timing, false to replay as fast as possible.
+     */
+    public void replay(String fileName, boolean realTime) {
+        if (receiver == null)
+            return;
+        stopReplay();
+        try {
+            player = new SessionPlayer(receiver, Paths.get(parent.sketchPath(fileName)), realTime);
+            player.start();
+        } catch (IOException e) {
+            System.err.println("LaunchControl Error: it was not possible to replay " + fileName + ". Error message: " + e.getMessage());
+        }
+    }
+
+    /***
+     * Stops replaying a recording.
+     */
+    public void stopReplay() {
+        if (player != null) {
+            player.stop();
+            player = null;
+        }
+    }
+
+    /***
+     * Takes a snapshot of every knob, slider and pad. All values in the snapshot are taken at the same
+     * point in time, even while the controller is sending changes.
+     * @return The snapshot.
+     */
+    public ControllerSnapshot snapshot() {
+        return state.snapshot();
+    }
+
+    /***
+     * Copies the values of all knobs and sliders at once, knobs first and then sliders,
+     * in the order of {@link KNOBS} and {@link SLIDERS}. Reading the values this way is faster
+     * than calling `value()` on each knob and slider, and all values are taken at the same point in time.
+     * @param dst The array to copy the values to, reused from frame to frame.
+     * @return dst, or a new array if dst is null or too short.
+     */
+    public float[] copyValues(float[] dst) {
+        return state == null ? new float[0] : state.copyValues(dst);
+    }
+
+    /***
+     * Copies the positions, between 0 and 127, of all knobs and sliders at once. See {@link #copyValues(float[])}.
+     * @param dst The array to copy the positions to.
+     * @return dst, or a new array if dst is null or too short.
+     */
+    public int[] copyPositions(int[] dst) {
+        return state == null ? new int[0] : state.copyPositions(dst);
+    }
+
+    /***
+     * Copies the values of all pads at once, in the order of {@link PADS}.
+     * @param dst The array to copy the values to.
+     * @return dst, or a new array if dst is null or too short.
+     */
+    public boolean[] copyPadValues(boolean[] dst) {
+        return state == null ? new boolean[0] : state.copyPadValues(dst);
+    }
+
+    /***
+     * Handles the controller events queued since the previous frame, and advances the smoothed
+     * values of knobs and sliders. Called by Processing before each frame is drawn.
+     */
+    public void pre() {
+        if (receiver == null)
+            return;
+        receiver.longPresses();
+        if (receiver.changes == null) {
+            receiver.drain();
+        } else {
+            boolean batch = beginBatch();
+            try {
+                receiver.drain();
+                receiver.flush();
+            } finally {
+                if (batch)
+                    endBatch();
+            }
+        }
+        receiver.beginFrame();
+        MappingFile mapping = this.mapping;
+        if (mapping != null)
+            mapping.apply(receiver.controls());
+        PresetBank presets = this.presets;
+        if (presets != null)
+            presets.advance();
+        Automation automation = this.automation;
+        if (automation != null)
+            automation.advance();
+        if (state != null) {
+            long now = System.nanoTime();
+            state.estimate(now);
+            state.smooth(now);
+        }
+        LatencyStats stats = receiver.stats;
+        if (stats != null)
+            stats.tick(System.nanoTime());
+        receiver.flushLeds();
+    }
+
+    /***
+     * Sends to the device the pad lights changed while the frame was drawn.
+     * Called by Processing after each frame is drawn.
+     */
+    public void post() {
+        if (receiver == null)
+            return;
+        receiver.endFrame();
+        receiver.flushLeds();
+    }
+
+    // ****** EVENTS ****** //
+
+    /***
+     * Registers a listener to be notified when either a knob, slider or pad has changed.
+     * @param listener The listener to add.
+     */
+    public synchronized void addControllerListener(ControllerListener listener) {
+        controllerListeners = add(controllerListeners, listener);
+    }
+
+    public synchronized void removeControllerListener(ControllerListener listener) {
+        controllerListeners = remove(controllerListeners, listener);
+    }
+
+    /***
+     * Registers a listener to be notified when the controller is connected. The listener is not called
+     * for a controller already connected, see {@link #isConnected()}.
+     * @param listener The listener to add.
+     */
+    public synchronized void addConnectionListener(ConnectionListener listener) {
+        connectionListeners = add(connectionListeners, listener);
+    }
+
+    public synchronized void removeConnectionListener(ConnectionListener listener) {
+        connectionListeners = remove(connectionListeners, listener);
+    }
+
+    /***
+     * Registers a listener to be notified when a knob has changed.
+     * @param listener The listener to add.
+     */
+    public synchronized void addKnobListener(KnobListener listener) {
+        knobListeners = add(knobListeners, listener);
+    }
+
+    public synchronized void removeKnobListener(KnobListener listener) {
+        knobListeners = remove(knobListeners, listener);
+    }
+
+    /***
+     * Registers a listener to be notified when a slider has changed.
+     * @param listener The listener to add.
+     */
+    public synchronized void addSliderListener(SliderListener listener) {
+        sliderListeners = add(sliderListeners, listener);
+    }
+
+    public synchronized void removeSliderListener(SliderListener listener) {
+        sliderListeners = remove(sliderListeners, listener);
+    }
+
+    /***
+     * Registers a listener to be notified when a pad has changed.
+     * @param listener The listener to add.
+     */
+    public synchronized void addPadListener(PadListener listener) {
+        padListeners = add(padListeners, listener);
+    }
+
+    public synchronized void removePadListener(PadListener listener) {
+        padListeners = remove(padListeners, listener);
+    }
+
+    /**
+     * Registers the event methods declared in the sketch, such as `LaunchControlKnobChanged(KNOBS knob)`,
+     * as listeners.
+     * @return False if the sketch does not declare any of the event methods.
+     */
+    boolean addSketchListeners() {
+        ControllerListener controllerListener = SketchEvents.controllerListener(parent);
+        KnobListener knobListener = SketchEvents.knobListener(parent);
+        SliderListener sliderListener = SketchEvents.sliderListener(parent);
+        PadListener padListener = SketchEvents.padListener(parent);
+        if (controllerListener != null)
+            addControllerListener(controllerListener);
+        if (knobListener != null)
+            addKnobListener(knobListener);
+        if (sliderListener != null)
+            addSliderListener(sliderListener);
+        if (padListener != null)
+            addPadListener(padListener);
+        return controllerListener != null || knobListener != null || sliderListener != null || padListener != null;
+    }
+
+    public void midiLaunchControlChanged() {
+        valueWritten();
+        if (holdControllerChanged())
+            return;
+        for (ControllerListener listener : controllerListeners) {
+            try {
+                listener.controllerChanged();
+            } catch (RuntimeException e) {
+                reportListenerError(listener, e);
+            }
+        }
+    }
+
+    public void knobChanged(KNOBS knob) {
+        valueWritten();
+        for (KnobListener listener : knobListeners) {
+            try {
+                listener.knobChanged(knob);
+            } catch (RuntimeException e) {
+                reportListenerError(listener, e);
+            }
+        }
+    }
+
+    public void sliderChanged(SLIDERS slider) {
+        valueWritten();
+        for (SliderListener listener : sliderListeners) {
+            try {
+                listener.sliderChanged(slider);
+            } catch (RuntimeException e) {
+                reportListenerError(listener, e);
+            }
+        }
+    }
+
+    public void padChanged(PADS pad) {
+        valueWritten();
+        for (PadListener listener : padListeners) {
+            try {
+                listener.padChanged(pad);
+            } catch (RuntimeException e) {
+                reportListenerError(listener, e);
+            }
+        }
+    }
+
+    private void valueWritten() {
+        LatencyStats stats = receiver == null ? null : receiver.stats;
+        if (stats != null)
+            stats.written();
+    }
+
+    private void connected() {
+        for (ConnectionListener listener : connectionListeners) {
+            try {
+                listener.connected();
+            } catch (RuntimeException e) {
+                reportListenerError(listener, e);
+            }
+        }
+    }
+
+    private static void reportListenerError(Object listener, RuntimeException e) {
+        System.err.println("LaunchControl Error: an error occurred in listener " + listener + ".");
+        e.printStackTrace();
+    }
+
+    private static <T> T[] add(T[] listeners, T listener) {
+        if (listener == null)
+            throw new IllegalArgumentException("LaunchControl Error: listener can not be null.");
+        T[] result = Arrays.copyOf(listeners, listeners.length + 1);
+        result[listeners.length] = listener;
+        return result;
+    }
+
+    private static <T> T[] remove(T[] listeners, T listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i].equals(listener)) {
+                T[] result = Arrays.copyOf(listeners, listeners.length - 1);
+                System.arraycopy(listeners, i + 1, result, i, listeners.length - i - 1);
+                return result;
+            }
+        }
+        return listeners;
+    }
+
+    /**
+     * Called before triggering `LaunchControlChanged`. While coalesced changes are being applied,
+     * the event is held, and triggered only once at the end.
+     * @return True if the event must not be triggered now.
+     */
+    boolean holdControllerChanged() {
+        if (batchThread != Thread.currentThread())
+            return false;
+        changedInBatch = true;
+        return true;
+    }
+
+    /**
+     * Holds `LaunchControlChanged` until {@link #endBatch()}, while many controls are changed at once
+     * by the animation thread. Only the events triggered by the calling thread are held.
+     * @return False if a batch was already started, in which case this batch is part of it, or is applied by
+     * another thread, and must not be ended.
+     */
+    boolean beginBatch() {
+        if (batchThread != null)
+            return false;
+        changedInBatch = false;
+        batchThread = Thread.currentThread();
+        return true;
+    }
+
+    /**
+     * Triggers `LaunchControlChanged` once if any control changed since {@link #beginBatch()}.
+     */
+    void endBatch() {
+        batchThread = null;
+        if (changedInBatch)
+            midiLaunchControlChanged();
+    }
+
+    /***
+     * Configures the knobs, sliders and pads from a mapping file, instead of calling their methods one by one,
+     * and reloads the file whenever it changes. The file has one line per setting of a control:
+     * <p>{@code
+     * KNOB_01.variable = hue
+     * KNOB_01.range = 0, 360
+     * KNOB_01.default = 180
+     * SLIDER_1.smoothing = EXPONENTIAL 0.2
+     * PAD_1.variable = invert
+     * padMode = RADIO
+     * }</p>
+     * Knobs and sliders accept {@code variable}, {@code range}, {@code curve}, {@code default}, {@code takeover},
+     * {@code smoothing} and {@code highResolution}, and knobs also {@code mode}, {@code steps} and {@code acceleration}; pads accept
+     * {@code variable}, {@code default} and {@code mode}. Controls missing from the file keep their configuration.
+     * A reloaded file is applied at the start of the next frame, all ranges, default values and variables at once.
+     * @param fileName The name of the file, relative to the sketch folder.
+     * @return False if the file could not be read, or has errors, in which case nothing is changed.
+     */
+    public boolean loadMapping(String fileName) {
+        return loadMapping(fileName, true);
+    }
+
+    /***
+     * Configures the controls from a mapping file. See {@link #loadMapping(String)}.
+     * @param fileName The name of the file, relative to the sketch folder.
+     * @param hotReload True to reload the file whenever it changes.
+     * @return False if the file could not be read, or has errors.
+     */
+    public synchronized boolean loadMapping(String fileName, boolean hotReload) {
+        if (receiver == null || state == null)
+            return false;
+        MappingFile mapping = new MappingFile(Paths.get(parent.sketchPath(fileName)), parent, state);
+        try {
+            mapping.load();
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("LaunchControl Error: it was not possible to load the mapping " + fileName + ". Error message: " + e.getMessage());
+            return false;
+        }
+        MappingFile previous = this.mapping;
+        if (previous != null)
+            previous.stop();
+        mapping.apply(receiver.controls());
+        this.mapping = mapping;
+        if (hotReload)
+            mapping.watch(MappingFile.DEFAULT_PERIOD);
+        return true;
+    }
+
+    /***
+     * Opens the preset bank stored in the given file, with {@value PresetBank#DEFAULT_SLOTS} slots, to save the values
+     * of all knobs, sliders and pads and recall them later. See {@link PresetBank}.
+     * @param fileName The name of the file, relative to the sketch folder. The file is created if it does not exist.
+     * @return The preset bank, or null if the file could not be opened.
+     */
+    public PresetBank presets(String fileName) {
+        return presets(fileName, PresetBank.DEFAULT_SLOTS);
+    }
+
+    /***
+     * Opens the preset bank stored in the given file. See {@link #presets(String)}.
+     * @param fileName The name of the file, relative to the sketch folder.
+     * @param slots The number of presets of a new file. An existing file keeps its number of presets.
+     * @return The preset bank, or null if the file could not be opened.
+     */
+    public synchronized PresetBank presets(String fileName, int slots) {
+        if (receiver == null || state == null)
+            return null;
+        PresetBank previous = presets;
+        presets = null;
+        if (previous != null)
+            previous.close();
+        try {
+            presets = new PresetBank(this, receiver, state, Paths.get(parent.sketchPath(fileName)), slots);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("LaunchControl Error: it was not possible to open the presets " + fileName + ". Error message: " + e.getMessage());
+        }
+        return presets;
+    }
+
+    /***
+     * Returns the automation lanes of the knobs and sliders, to record their movements and play them back
+     * in a loop. See {@link Automation}.
+     * @return The automation of the controller, created when first requested.
+     */
+    public synchronized Automation automation() {
+        if (automation == null && receiver != null && state != null)
+            automation = new Automation(receiver, state, parent);
+        return automation;
+    }
+
+    /***
+     * Enables or disables reconnecting automatically to the controller. When enabled, the list of MIDI devices
+     * is checked every second by a background thread: if the controller is unplugged, its ports are closed,
+     * and when it is plugged in again, it is reconnected, and its pad lights are restored. This also connects
+     * to a controller plugged in after the sketch started.
+     * @param autoReconnect True to reconnect automatically.
+     */
+    public void autoReconnect(boolean autoReconnect) {
+        autoReconnect(autoReconnect, DeviceWatcher.DEFAULT_PERIOD);
+    }
+
+    /***
+     * Enables or disables reconnecting automatically to the controller. See {@link #autoReconnect(boolean)}.
+     * @param autoReconnect True to reconnect automatically.
+     * @param periodMillis The time between two checks of the list of MIDI devices, in milliseconds.
+     */
+    public void autoReconnect(boolean autoReconnect, int periodMillis) {
+        DeviceWatcher watcher;
+        // not the lock of the controller, held by the watcher thread while it reopens the ports
+        synchronized (watcherLock) {
+            if (this.watcher != null) {
+                this.watcher.stop();
+                this.watcher = null;
+            }
+            if (!autoReconnect)
+                return;
+            if (devices == null) {
+                System.err.println("LaunchControl Error: automatic reconnection is not available for controllers created by LaunchControlManager.");
+                return;
+            }
+            watcher = this.watcher = new DeviceWatcher(this, devices, periodMillis);
+        }
+        watcher.start();
+    }
+
+    /***
+     * @return True if the controller is connected.
+     */
+    public boolean isConnected() {
+        return deviceIn != null;
+    }
+
+    /**
+     * Remembers where the controller is found, so that it can be reconnected by {@link #autoReconnect(boolean)}.
+     */
+    void watchable(MidiDeviceProvider devices, String... deviceNames) {
+        this.devices = devices;
+        this.deviceNames = deviceNames;
+    }
+
+    /**
+     * Called by the {@link DeviceWatcher} thread when the list of MIDI devices changed.
+     * Disconnects from the controller if it was unplugged, and connects to it if it was plugged in.
+     * The connection listeners are called once the controller is reconnected, without holding its lock.
+     */
+    void devicesChanged(MidiDeviceProvider devices, javax.sound.midi.MidiDevice.Info[] infos) throws MidiUnavailableException {
+        synchronized (this) {
+            if (deviceIn != null) {
+                if (isListed(devices, deviceIn, infos))
+                    return;
+                disconnect();
+                println("The controller was disconnected.");
+            }
+            DevicePorts ports = DevicePorts.first(devices, false, deviceNames);
+            if (ports == null)
+                return;
+            attach(ports);
+            println("The controller was reconnected.");
+        }
+        connected();
+    }
+
+    /**
+     * Connects to the controller found after the controller object was created, and puts it
+     * in the state of the controller object.
+     */
+    private void attach(DevicePorts ports) throws MidiUnavailableException {
+        deviceIn = ports.input;
+        deviceOut = ports.output;
+        receiver.setDevice(deviceOut);
+        try {
+            connect(null);
+        } catch (MidiUnavailableException | RuntimeException e) {
+            disconnect();
+            throw e;
+        }
+        resetDevice();
+        // the reset turned all lights off: send the whole buffer again
+        receiver.leds.invalidate();
+        receiver.flushLeds();
+    }
+
+    /**
+     * Looks the controller up and connects to it in a background thread, so that the constructor
+     * of a device returns immediately. The connection listeners are called once it is connected.
+     */
+    void connectAsync() {
+        connecting = new Thread(() -> {
+            DevicePorts ports = DevicePorts.first(devices, debug, deviceNames);
+            synchronized (this) {
+                if (Thread.currentThread() != connecting)
+                    return; // disposed meanwhile
+                connecting = null;
+                if (deviceIn != null)
+                    return; // already connected by the device watcher
+                if (ports == null) {
+                    System.out.printf("A device with name ending with %s was not detected.\n", String.join(" or ", deviceNames));
+                    return;
+                }
+                try {
+                    attach(ports);
+                } catch (MidiUnavailableException | RuntimeException e) {
+                    System.err.println("LaunchControl Error: could not connect to the controller: " + e.getMessage());
+                    return;
+                }
+                startupNanos = System.nanoTime() - createdAt;
+                println("Connected to MIDI device.");
+            }
+            connected();
+        }, "pLaunchControl connect");
+        connecting.setDaemon(true);
+        connecting.start();
+    }
+
+    /**
+     * Records the time taken to connect to the controller, when it was found before the controller object was created.
+     */
+    void startupFinished(DevicePorts ports) {
+        startupNanos = ports.discoveryNanos + System.nanoTime() - createdAt;
+    }
+
+    /***
+     * @return The time taken to find the controller and connect to it, in milliseconds,
+     * or -1 if the controller is not connected yet.
+     */
+    public float getStartupMillis() {
+        long nanos = startupNanos;
+        return nanos < 0 ? -1 : nanos / 1e6f;
+    }
+
+    /**
+     * @return True if the connected device is still listed. A device listed with the same name is only the same
+     * device if the provider still returns it for that name: a controller unplugged and plugged in again between
+     * two checks is listed with its name, but is a new device, whose ports must be opened again. A port closed
+     * by the system is not connected either.
+     */
+    private static boolean isListed(MidiDeviceProvider devices, javax.sound.midi.MidiDevice device, javax.sound.midi.MidiDevice.Info[] infos) {
+        if (!device.isOpen())
+            return false;
+        javax.sound.midi.MidiDevice.Info info = device.getDeviceInfo();
+        DeviceCache cache = DeviceCache.of(devices);
+        for (javax.sound.midi.MidiDevice.Info listed : infos)
+            if (listed == info || listed.getName().equals(info.getName()) && cache.device(listed) == device)
+                return true;
+        return false;
+    }
+
+    private void disconnect() {
+        javax.sound.midi.MidiDevice in = deviceIn, out = deviceOut;
+        deviceIn = null;
+        deviceOut = null;
+        receiver.setDevice(null);
+        try {
+            if (in != null)
+                in.close();
+            if (out != null)
+                out.close();
+        } catch (RuntimeException e) {
+            // the device is gone; its ports may already be unusable
+        }
+    }
+
+    /**
+     * Sends the messages putting the controller in the state expected by the library,
+     * after it was connected.
+     */
+    void resetDevice() {
+    }
+
+    /**
+     * Opens the ports of the controller, and starts receiving its messages.
+     * @param dispatcher The thread handling the messages of several controllers, or null to handle
+     *                   the messages in the thread delivering them.
+     */
+    void connect(SharedDispatcher dispatcher) throws MidiUnavailableException {
+        deviceIn.open();
+        if (deviceOut != null)
+            deviceOut.open();
+        deviceIn.getTransmitter().setReceiver(dispatcher == null ? receiver : dispatcher.register(receiver));
+    }
+
     /***
      * Clean-up operations executed when
      * the parent sketch shuts down.
      */
     public void dispose() {
 
+        synchronized (this) {
+            connecting = null;
+        }
+        autoReconnect(false);
+        stopReplay();
+        stopRecording();
+        PresetBank presets = this.presets;
+        if (presets != null)
+            presets.close();
+        MappingFile mapping = this.mapping;
+        if (mapping != null)
+            mapping.stop();
+
+        if (receiver != null && receiver.scheduler != null) {
+            receiver.scheduler.stop();
+            receiver.scheduler = null;
+        }
+
         if (deviceIn != null && deviceIn.isOpen()) {
             deviceIn.close();
         }
@@ -83,4 +83,11 @@ public interface MidiDevice {
 
     void setSliderValueRange(float slider_min, float slider_max);
 
+    /**
+     * Takes a consistent snapshot of every knob, slider and pad, without blocking the thread
+     * receiving the messages of the controller.
+     * @return The values of all controls at a single point in time.
+     */
+    ControllerSnapshot snapshot();
+
 }
@@ -0,0 +1,129 @@
+package pLaunchControl;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends messages to the device from a dedicated thread, so that the sketch never waits for the
+ * MIDI output. Messages are sent at most at a configurable rate. Pad lights are taken from the
+ * {@link LedBuffer} only when the scheduler is ready to send, so several changes to the same LED
+ * are merged and only the latest one is sent. Other messages wait in a bounded queue, and are
+ * dropped when the queue is full.
+ */
+final class OutputScheduler implements Runnable {
+
+    static final int DEFAULT_RATE = 1000;
+    private static final int QUEUE_CAPACITY = 256;
+
+    private final LaunchControlDeviceReceiver receiver;
+    private final ArrayBlockingQueue<MidiMessage> messages = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final long intervalNanos;
+    private final Thread thread;
+
+    private volatile boolean running = true;
+    private volatile boolean ledsPending;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long sent;
+
+    /**
+     * @param receiver The receiver holding the device output and the LED buffer.
+     * @param maxMessagesPerSecond The maximum number of messages sent to the device per second.
+     */
+    OutputScheduler(LaunchControlDeviceReceiver receiver, int maxMessagesPerSecond) {
+        if (maxMessagesPerSecond < 1)
+            throw new IllegalArgumentException("The maximum rate of MIDI messages must be at least 1 per second.");
+        this.receiver = receiver;
+        this.intervalNanos = 1_000_000_000L / maxMessagesPerSecond;
+        this.thread = new Thread(this, "pLaunchControl MIDI output");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues a message to be sent to the device.
+     * @return False if the queue is full, in which case the message is dropped.
+     */
+    boolean send(MidiMessage message) {
+        if (!messages.offer(message)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        LockSupport.unpark(thread);
+        return true;
+    }
+
+    /**
+     * Asks the scheduler to send the pad lights changed in the {@link LedBuffer}.
+     */
+    void flushLeds() {
+        ledsPending = true;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Stops the scheduler thread, sending the messages still waiting.
+     */
+    void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        long next = System.nanoTime();
+        while (running || !messages.isEmpty() || ledsPending) {
+            Receiver out = receiver.output();
+            if (out == null || (messages.isEmpty() && !ledsPending)) {
+                if (!running)
+                    break;
+                LockSupport.park(this);
+                continue;
+            }
+
+            long wait = next - System.nanoTime();
+            if (wait > 0 && running) {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+
+            int count;
+            MidiMessage message = messages.poll();
+            if (message != null) {
+                try {
+                    out.send(message, -1);
+                } catch (RuntimeException e) {
+                    System.out.println("Error sending Midi message: " + e);
+                }
+                count = 1;
+            } else {
+                ledsPending = false;
+                count = receiver.leds.flush(out, 1);
+                if (receiver.leds.pending())
+                    ledsPending = true;
+            }
+            sent += count;
+            next = Math.max(next, System.nanoTime() - intervalNanos) + count * intervalNanos;
+        }
+    }
+
+    int queueDepth() {
+        return messages.size();
+    }
+
+    long dropped() {
+        return dropped.get();
+    }
+
+    long sent() {
+        return sent;
+    }
+}
@@ -16,5 +16,32 @@ public enum PADMODE {
      * Pads work as a group of "radio buttons", meaning that only one pad can be activated at a time.
      * Pushing one pad will deactivate the other pads.
      */
-    RADIO
+    RADIO,
+    /**
+     * Pad is on while it is held, and off once it is released. Events are triggered on both.
+     */
+    MOMENTARY,
+    /**
+     * Pushing the pad triggers a single event. The pad is on during the event, and through the next frame,
+     * then turned off without an event.
+     */
+    TRIGGER,
+    /**
+     * Each push moves the pad to its next state, lit with the colour of the state, and back to the first
+     * state after the last one. The pad is off in the first state only. See {@link Pad#cycle(byte...)}.
+     */
+    CYCLE,
+    /**
+     * Pad works like {@link #TOGGLE}, but only when held for the long-press time, see
+     * {@link MidiController#padTiming(float, float)}. Shorter pushes are ignored.
+     * A pad still held is reported at the start of a frame: unless events are queued, with
+     * {@link MidiController#queueEvents(boolean)}, its event is then triggered by the animation thread,
+     * while the thread receiving the messages of the controller waits.
+     */
+    LONG_PRESS,
+    /**
+     * Pad works like {@link #TOGGLE}, but only when pushed twice within the double-tap time, see
+     * {@link MidiController#padTiming(float, float)}.
+     */
+    DOUBLE_TAP
 }
@@ -1,7 +1,5 @@
 package pLaunchControl;
 
-import java.lang.reflect.Field;
-
 
 /**
  * A logical representation of the physical pad in the MIDI controller.
@@ -13,21 +11,50 @@ import java.lang.reflect.Field;
  */
 public class Pad {
 
-    private boolean defaultValue;
-    private boolean value;
-
     public PADS controllerPad;
     private Object parent_object;
 
-    private boolean hasDefault = false;
+    private final ControlState state;
+    private final int index;
+
+    /**
+     * The device showing the light of the pad, or null.
+     */
+    private final MidiController device;
+
+    /**
+     * The colours of the states of the pad in {@link PADMODE#CYCLE}.
+     */
+    static final byte[] DEFAULT_COLOURS = {LedConstants.OFF, LedConstants.GREEN_FULL, LedConstants.AMBER_FULL, LedConstants.RED_FULL};
+
+    private volatile PADMODE mode;
+    private volatile byte[] colours = DEFAULT_COLOURS;
+    private volatile int cycleState;
+
+    /**
+     * The variable set to the state of the pad in {@link PADMODE#CYCLE}, instead of its value.
+     */
+    private volatile FieldBinding stateBinding;
 
     protected Pad(int padCode) {
-        controllerPad = PADS.values()[padCode];
+        this(padCode, null, ControlState.detached(), 0, null);
     }
 
     protected Pad(int padCode, Object parent) {
+        this(padCode, parent, ControlState.detached(), 0, null);
+    }
+
+    /**
+     * @param state The state of the controls of the device.
+     * @param index The index of the pad in the state.
+     * @param device The device showing the light of the pad.
+     */
+    Pad(int padCode, Object parent, ControlState state, int index, MidiController device) {
         controllerPad = PADS.values()[padCode];
         parent_object = parent;
+        this.state = state;
+        this.index = index;
+        this.device = device;
     }
 
 
@@ -38,13 +65,7 @@ public class Pad {
      * @return The Pad itself.
      */
     public Pad defaultValue(boolean defaultValue) {
-        this.defaultValue = defaultValue;
-
-        this.hasDefault = true;
-        if (variable != null) {
-            setBooleanField(parent_object, variable, defaultValue);
-        }
-        return this;
+        return value(defaultValue);
     }
 
     /***
@@ -55,63 +76,145 @@ public class Pad {
      * @param value The default value of the pad.
      */
     public Pad value(boolean value) {
-        if (hasDefault) hasDefault = false;
-        this.value = value;
-        setBooleanField(parent_object, variable, this.value);
+        if (!value)
+            cycleState = 0;
+        else if (cycleState == 0)
+            cycleState = 1;
+        state.setPad(index, value);
+        write();
         return this;
     }
 
+    /**
+     * Sets the mode of operation of this pad, instead of the mode of the controller set with
+     * {@link MidiDevice#setPadMode(PADMODE)}. Pads in {@link PADMODE#RADIO} mode only switch off each other.
+     * @param mode The mode of the pad, or null to follow the mode of the controller.
+     * @return The Pad itself.
+     */
+    public Pad mode(PADMODE mode) {
+        this.mode = mode;
+        refresh();
+        showLed();
+        return this;
+    }
 
     /**
-     * @return The current value of the pad object.
+     * Sets the mode of the pad, the caller holding the sequence lock of the state, see {@link ControlState#write(Runnable)}.
+     * The attached variable and the light are updated afterwards with {@link #refresh()} and {@link #showLed()}.
+     * @param colours The colours of the states in {@link PADMODE#CYCLE}, starting the pad in its first state, or null.
      */
-    public boolean value() {
-        if (hasDefault)
-            return this.defaultValue;
-        return value;
-    }
-
-    private Field getField(Object parent, String fieldName) {
-        if (fieldName == null)
-            return null;
-        try {
-            return parent.getClass().getDeclaredField(fieldName);
-        } catch (Exception e) {
-            throw new IllegalArgumentException("LaunchControl Error: variable not found in the sketch: " + fieldName + ".");
+    void putMode(PADMODE mode, byte[] colours) {
+        if (colours != null) {
+            this.colours = colours.clone();
+            cycleState = 0;
+            state.padValue[index] = false;
         }
+        this.mode = mode;
+    }
 
+    /**
+     * @return The mode of this pad, or null if the pad follows the mode of the controller.
+     */
+    public PADMODE mode() {
+        return mode;
     }
 
+    /**
+     * Sets the pad to {@link PADMODE#CYCLE} mode, with a state for each colour. Each push moves the pad to its next
+     * state, and back to the first one after the last. The pad is off in the first state.
+     * @param colours The colour of each state, from {@link LedConstants}, the first one usually {@link LedConstants#OFF}.
+     * @return The Pad itself.
+     */
+    public Pad cycle(byte... colours) {
+        if (colours.length < 2)
+            throw new IllegalArgumentException("LaunchControl Error: a pad needs at least 2 states to cycle.");
+        this.colours = colours.clone();
+        cycleState = 0;
+        state.setPad(index, false);
+        return mode(PADMODE.CYCLE);
+    }
 
-    private void setBooleanField(Object parent, String fieldName, boolean value) {
+    /**
+     * @return The state of the pad in {@link PADMODE#CYCLE} mode, between 0 and the number of colours - 1,
+     * or 1 if the pad is on and 0 if it is off in the other modes.
+     */
+    public int state() {
+        return cycleState;
+    }
 
-        Field field = getField(parent,fieldName);
-        if (field == null)
-            return;
+    /**
+     * Moves the pad to its next state in {@link PADMODE#CYCLE} mode.
+     */
+    void advance() {
+        int next = (cycleState + 1) % colours.length;
+        cycleState = next;
+        state.setPad(index, next != 0);
+        write();
+    }
 
-        field.setAccessible(true);
-        try {
-            field.setBoolean(parent, value);
-        }
-        catch (IllegalAccessException e) {
-            System.err.printf("LaunchControl Error: It was not possible to set the value of the variable %s. Error message: %s%n", fieldName, e.getMessage());
+    /**
+     * Shows the light of the pad on the device, after its mode or colours changed.
+     */
+    void showLed() {
+        LaunchControlDeviceReceiver receiver = device == null ? null : device.receiver;
+        if (receiver != null)
+            receiver.setLed(controllerPad, value());
+    }
+
+    /**
+     * @return The colour of the light of the pad when it is turned on or off.
+     */
+    byte led(boolean onOff) {
+        if (mode == PADMODE.CYCLE)
+            return colours[cycleState % colours.length];
+        return onOff ? LedConstants.RED_FULL : LedConstants.OFF;
+    }
+
+    private void write() {
+        FieldBinding binding = stateBinding;
+        if (binding != null) {
+            binding.setInt(cycleState);
+            return;
         }
+        binding = state.padBinding(index);
+        if (binding != null)
+            binding.setBoolean(value());
+    }
 
+
+    /**
+     * @return The current value of the pad object.
+     */
+    public boolean value() {
+        return state.padValue[index];
     }
 
     /**
-     * Attaches the pad value to a variable. The variable name must match a boolean variable
-     * in your sketch. This method returns the current instance of Pad, to enable chaining
+     * Attaches the pad value to a variable. The variable must be a boolean variable in your sketch,
+     * or a numeric variable set to 1 or 0, or a path to one, such as {@code layers[2].visible}. This method returns the current instance of Pad, to enable chaining
      * of methods during start up.
      * @param variable
      * @return The current instance of Pad.
      */
     public Pad variable(String variable) {
+        FieldBinding binding = FieldBinding.forBoolean(parent_object, variable);
+        state.bindPad(index, binding);
         this.variable = variable;
-        setBooleanField(parent_object, variable, value());
+        refresh();
         return this;
     }
 
+    /**
+     * Updates the attached variable after the mode or variable of the pad were changed, by the sketch or by a
+     * {@link ControlMapping}. In {@link PADMODE#CYCLE} mode, numeric variables are set to the state of the pad.
+     */
+    void refresh() {
+        FieldBinding binding = state.padBinding(index);
+        stateBinding = mode == PADMODE.CYCLE && binding != null ? FieldBinding.forInt(parent_object, binding.fieldName()) : null;
+        if (binding != null)
+            write();
+    }
+
     public String getVariable() {
         return this.variable;
     }
@@ -119,6 +222,8 @@ public class Pad {
 
     public Pad plugTo(Object parent_object) {
         this.parent_object = parent_object;
+        state.bindPad(index, FieldBinding.forBoolean(parent_object, variable));
+        refresh();
         return this;
     }
 
@@ -0,0 +1,14 @@
+package pLaunchControl;
+
+/**
+ * Receives notifications when a pad switches states.
+ * Register a listener with {@link MidiController#addPadListener(PadListener)}.
+ */
+public interface PadListener {
+
+    /**
+     * Called when a pad has changed.
+     * @param pad The pad that was changed.
+     */
+    void padChanged(PADS pad);
+}
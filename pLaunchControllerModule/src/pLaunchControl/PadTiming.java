@@ -0,0 +1,111 @@
+package pLaunchControl;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the presses and releases of the pads of a device, to detect long presses and double taps for
+ * {@link PADMODE#LONG_PRESS} and {@link PADMODE#DOUBLE_TAP}. Each press or release is turned into a set of flags
+ * by the receiver, as soon as the message arrives, and the flags travel with the event in place of the velocity.
+ * <p>Edges are timed with the timestamp of the MIDI message, in microseconds, or with the arrival time of the message
+ * when the device does not timestamp its messages. A pad held longer than the long-press time is also reported while
+ * it is still held, by {@link #longPresses(long)} once per frame, with the system clock.
+ * Arrays are indexed by pad; press times are only used by the thread handling the messages of the device.</p>
+ */
+final class PadTiming {
+
+    static final int PRESSED = 1;
+    static final int RELEASED = 2;
+    static final int DOUBLE_TAP = 4;
+    static final int LONG_PRESS = 8;
+
+    static final float DEFAULT_LONG_PRESS = 0.5f;
+    static final float DEFAULT_DOUBLE_TAP = 0.3f;
+
+    private volatile long longPressMicros = (long) (DEFAULT_LONG_PRESS * 1e6);
+    private volatile long doubleTapMicros = (long) (DEFAULT_DOUBLE_TAP * 1e6);
+
+    private final long[] pressTime;
+    private final long[] pressNanos;
+    private final long[] lastTap;
+
+    /**
+     * The pads held and not yet reported as long presses, one bit per pad. Whichever thread clears the bit of a pad
+     * reports its long press, so that a press is reported at most once.
+     */
+    private final AtomicLong armed = new AtomicLong();
+
+    PadTiming(int pads) {
+        pressTime = new long[pads];
+        pressNanos = new long[pads];
+        lastTap = new long[pads];
+        Arrays.fill(lastTap, Long.MIN_VALUE / 2);
+    }
+
+    /**
+     * @param longPressSeconds The time a pad must be held to make a long press.
+     * @param doubleTapSeconds The longest time between two presses making a double tap.
+     */
+    void times(float longPressSeconds, float doubleTapSeconds) {
+        if (longPressSeconds <= 0 || doubleTapSeconds <= 0)
+            throw new IllegalArgumentException("LaunchControl Error: the long press and double tap times must be positive.");
+        longPressMicros = (long) (longPressSeconds * 1e6);
+        doubleTapMicros = (long) (doubleTapSeconds * 1e6);
+    }
+
+    /**
+     * Records a press or release of a pad.
+     * @param timeStamp The timestamp of the message, in microseconds, or -1 if the device does not timestamp messages.
+     * @param arrival The {@link System#nanoTime()} of the arrival of the message, or 0 if unknown.
+     * @return The flags of the event: {@link #PRESSED} or {@link #RELEASED}, with {@link #DOUBLE_TAP} or {@link #LONG_PRESS}.
+     */
+    int edge(int pad, boolean pressed, long timeStamp, long arrival) {
+        long nanos = arrival != 0 ? arrival : System.nanoTime();
+        long micros = timeStamp >= 0 ? timeStamp : nanos / 1000;
+        long bit = 1L << pad;
+        if (pressed) {
+            int flags = PRESSED;
+            if (micros - lastTap[pad] <= doubleTapMicros) {
+                flags |= DOUBLE_TAP;
+                // a third tap starts a new double tap
+                lastTap[pad] = Long.MIN_VALUE / 2;
+            } else {
+                lastTap[pad] = micros;
+            }
+            pressTime[pad] = micros;
+            pressNanos[pad] = nanos;
+            armed.getAndAccumulate(bit, (a, b) -> a | b);
+            return flags;
+        }
+        if (claim(bit) && micros - pressTime[pad] >= longPressMicros)
+            return RELEASED | LONG_PRESS;
+        return RELEASED;
+    }
+
+    /**
+     * Finds the pads held for the long-press time since they were pressed. Called once per frame.
+     * @param now The current {@link System#nanoTime()}.
+     * @return The pads whose long press was not reported yet, one bit per pad.
+     */
+    long longPresses(long now) {
+        long armed = this.armed.get();
+        long pressed = 0;
+        long longPressNanos = longPressMicros * 1000;
+        while (armed != 0) {
+            int pad = Long.numberOfTrailingZeros(armed);
+            long bit = 1L << pad;
+            armed &= ~bit;
+            if (now - pressNanos[pad] >= longPressNanos && claim(bit))
+                pressed |= bit;
+        }
+        return pressed;
+    }
+
+    /**
+     * Clears the bit of a held pad.
+     * @return False if the long press of the pad was already reported.
+     */
+    private boolean claim(long bit) {
+        return (armed.getAndAccumulate(bit, (a, b) -> a & ~b) & bit) != 0;
+    }
+}
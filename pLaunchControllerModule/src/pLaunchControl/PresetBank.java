@@ -0,0 +1,354 @@
+package pLaunchControl;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Saves the values of all knobs, sliders and pads of a controller into numbered presets, and recalls them,
+ * either at once or by morphing from one preset to another over some time. Open a preset bank with
+ * {@link MidiController#presets(String)}.</p>
+ * <p>Pads given to {@link #pads(PADS...)} recall the preset of the same rank when pressed, and save the current
+ * values into it instead while the pad given to {@link #savePad(PADS)} is held. These pads then no longer change
+ * their value, nor trigger events, and the light of the pad of the current preset is on.</p>
+ * <p>Recalled values are held, like default values, until the physical controls take them over, see {@link TAKEOVER}.
+ * The values of all knobs and sliders are written at once; the attached variables are updated and the events triggered
+ * afterwards, with a single `LaunchControlChanged`. Recalls and morphs happen in the animation thread: a pad recalls
+ * its preset at the start of the next frame, and {@link #recall(int)} and {@link #morph(int, float)} are meant to be
+ * called from the sketch.</p>
+ * <p>The presets are kept in a binary file of fixed layout, memory-mapped when the bank is opened, so that saving and
+ * recalling a preset only writes or reads memory, without parsing nor allocating. The file starts with a header of
+ * {@value #HEADER_LENGTH} bytes: the magic number {@code PLCP}, the format version, the number of knobs and sliders,
+ * the number of pads, the number of presets and the length of a preset. Each preset then holds a byte set once the
+ * preset is saved, a byte per pad, padded to 8 bytes, and the position of each knob and slider, normalized between
+ * 0 and 1, as a big-endian double.</p>
+ */
+public final class PresetBank {
+
+    public static final int DEFAULT_SLOTS = 128;
+
+    static final int MAGIC = 0x504C4350;
+    static final short VERSION = 1;
+    static final int HEADER_LENGTH = 32;
+
+    private final MidiController controller;
+    private final LaunchControlDeviceReceiver receiver;
+    private final ControlState state;
+    private final MappedByteBuffer buffer;
+    private final int slots;
+    private final int controls;
+    private final int pads;
+    private final int slotLength;
+    private final int valuesOffset;
+
+    private volatile PADS[] slotPads = new PADS[0];
+    private volatile PADS savePad;
+    private volatile boolean saving;
+    private volatile int current = -1;
+    private final AtomicInteger pendingRecall = new AtomicInteger(-1);
+
+    // buffers of the animation thread
+    private final double[] from;
+    private final double[] to;
+    private final double[] normals;
+    private final boolean[] toPads;
+
+    // buffers of save(int), guarded by this object
+    private final double[] savedNormals;
+    private final boolean[] savedPads;
+
+    // the morph in progress, only used by the animation thread
+    private int morphTarget = -1;
+    private long morphStart;
+    private long morphNanos;
+
+    PresetBank(MidiController controller, LaunchControlDeviceReceiver receiver, ControlState state, Path file, int slots) throws IOException {
+        this.controller = controller;
+        this.receiver = receiver;
+        this.state = state;
+        controls = state.knobCount() + state.sliderCount();
+        pads = state.padValue.length;
+        valuesOffset = (1 + pads + 7) & ~7;
+        slotLength = valuesOffset + controls * Double.BYTES;
+        if (slots <= 0 || slots > (Integer.MAX_VALUE - HEADER_LENGTH) / slotLength)
+            throw new IllegalArgumentException("invalid number of presets: " + slots);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() == 0) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_LENGTH + (long) slots * slotLength);
+                buffer.putInt(0, MAGIC);
+                buffer.putShort(4, VERSION);
+                buffer.putShort(6, (short) controls);
+                buffer.putShort(8, (short) pads);
+                buffer.putInt(12, slots);
+                buffer.putInt(16, slotLength);
+            } else {
+                if (channel.size() < HEADER_LENGTH || channel.size() > Integer.MAX_VALUE)
+                    throw new IOException("Not a preset file: " + file);
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+                if (buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION)
+                    throw new IOException("Not a preset file, or saved with another version: " + file);
+                if (buffer.getShort(6) != controls || buffer.getShort(8) != pads || buffer.getInt(16) != slotLength)
+                    throw new IOException("The presets were saved for another controller: " + file);
+                slots = buffer.getInt(12);
+                if (slots <= 0 || channel.size() < HEADER_LENGTH + (long) slots * slotLength)
+                    throw new IOException("The preset file is truncated: " + file);
+            }
+        }
+        this.slots = slots;
+        from = new double[controls];
+        to = new double[controls];
+        normals = new double[controls];
+        toPads = new boolean[pads];
+        savedNormals = new double[controls];
+        savedPads = new boolean[pads];
+    }
+
+    /**
+     * Sets the pads recalling the presets: the first pad recalls the first preset, and so on.
+     * The pads then no longer change their value, nor trigger events.
+     * @param pads The pads, or none to recall presets only with {@link #recall(int)}.
+     * @return The PresetBank itself.
+     */
+    public PresetBank pads(PADS... pads) {
+        if (pads.length > slots)
+            throw new IllegalArgumentException("LaunchControl Error: there are more pads than presets.");
+        for (PADS pad : slotPads)
+            receiver.setLed(pad, false);
+        slotPads = pads.clone();
+        showCurrent();
+        return this;
+    }
+
+    /**
+     * Sets the pad which, while held, makes the pads of {@link #pads(PADS...)} save the presets instead of recalling them.
+     * The pad then no longer changes its value, nor triggers events.
+     * @param pad The pad, or null to save presets only with {@link #save(int)}.
+     * @return The PresetBank itself.
+     */
+    public PresetBank savePad(PADS pad) {
+        PADS previous = savePad;
+        savePad = pad;
+        saving = false;
+        if (previous != null && previous != pad)
+            receiver.setLed(previous, false);
+        return this;
+    }
+
+    /**
+     * @return The number of presets.
+     */
+    public int size() {
+        return slots;
+    }
+
+    /**
+     * @return The preset last saved or recalled, or -1.
+     */
+    public int current() {
+        return current;
+    }
+
+    /**
+     * @return True if the preset was saved.
+     */
+    public synchronized boolean isSaved(int slot) {
+        return buffer.get(offset(slot)) != 0;
+    }
+
+    /**
+     * Saves the current values of all knobs, sliders and pads into a preset, replacing its previous values.
+     * @param slot The preset, between 0 and {@link #size()} - 1.
+     */
+    public synchronized void save(int slot) {
+        int offset = offset(slot);
+        state.copyPreset(savedNormals, savedPads);
+        for (int pad = 0; pad < pads; pad++)
+            buffer.put(offset + 1 + pad, (byte) (savedPads[pad] ? 1 : 0));
+        for (int control = 0; control < controls; control++)
+            buffer.putDouble(offset + valuesOffset + control * Double.BYTES, savedNormals[control]);
+        buffer.put(offset, (byte) 1);
+        current = slot;
+        showCurrent();
+    }
+
+    /**
+     * Removes a preset. Recalling it then does nothing.
+     */
+    public synchronized void clear(int slot) {
+        buffer.put(offset(slot), (byte) 0);
+    }
+
+    /**
+     * Sets all knobs, sliders and pads to the values saved in a preset, stopping a morph in progress.
+     * @param slot The preset, between 0 and {@link #size()} - 1.
+     * @return False if the preset was never saved.
+     */
+    public boolean recall(int slot) {
+        if (!read(slot, to, toPads))
+            return false;
+        morphTarget = -1;
+        apply(to, toPads);
+        current = slot;
+        showCurrent();
+        return true;
+    }
+
+    /**
+     * Moves all knobs and sliders from their current values to the values saved in a preset, over the given time.
+     * Pads are set to the values of the preset at the end of the morph.
+     * @param slot The preset to reach.
+     * @param seconds The duration of the morph.
+     * @return False if the preset was never saved.
+     */
+    public boolean morph(int slot, float seconds) {
+        state.copyPreset(from, null);
+        return morphTo(slot, seconds);
+    }
+
+    /**
+     * Moves all knobs and sliders from the values saved in a preset to the values saved in another one, over the
+     * given time. See {@link #morph(int, float)}.
+     * @return False if one of the presets was never saved.
+     */
+    public boolean morph(int fromSlot, int toSlot, float seconds) {
+        return read(fromSlot, from, null) && morphTo(toSlot, seconds);
+    }
+
+    private boolean morphTo(int slot, float seconds) {
+        if (seconds <= 0)
+            return recall(slot);
+        if (!read(slot, to, toPads))
+            return false;
+        morphNanos = (long) (seconds * 1e9);
+        morphStart = System.nanoTime();
+        morphTarget = slot;
+        return true;
+    }
+
+    /**
+     * @return True while a morph is in progress.
+     */
+    public boolean isMorphing() {
+        return morphTarget >= 0;
+    }
+
+    /**
+     * Writes the values of the pending recall or of the morph in progress. Called once per frame by the animation thread.
+     */
+    void advance() {
+        int slot = pendingRecall.getAndSet(-1);
+        if (slot >= 0)
+            recall(slot);
+        if (morphTarget < 0)
+            return;
+        double t = (System.nanoTime() - morphStart) / (double) morphNanos;
+        if (t >= 1) {
+            slot = morphTarget;
+            morphTarget = -1;
+            apply(to, toPads);
+            current = slot;
+            showCurrent();
+            return;
+        }
+        for (int control = 0; control < controls; control++)
+            normals[control] = from[control] + (to[control] - from[control]) * t;
+        apply(normals, null);
+    }
+
+    /**
+     * Writes the values of all knobs and sliders at once, then the pads, triggering a single `LaunchControlChanged`.
+     * @param pads The values of the pads, or null to leave the pads unchanged.
+     */
+    private void apply(double[] normals, boolean[] pads) {
+        boolean batch = controller.beginBatch();
+        try {
+            receiver.recalled(state.setNormals(normals));
+            if (pads != null) {
+                for (int pad = 0; pad < this.pads; pad++) {
+                    PADS controllerPad = ControlLayout.PAD_VALUES[pad];
+                    if (!isPresetPad(controllerPad))
+                        receiver.recalled(controllerPad, pads[pad]);
+                }
+            }
+        } finally {
+            if (batch)
+                controller.endBatch();
+        }
+    }
+
+    /**
+     * Copies a saved preset.
+     * @param pads The array to copy the values of the pads to, or null.
+     * @return False if the preset was never saved.
+     */
+    private synchronized boolean read(int slot, double[] normals, boolean[] pads) {
+        int offset = offset(slot);
+        if (buffer.get(offset) == 0)
+            return false;
+        if (pads != null)
+            for (int pad = 0; pad < this.pads; pad++)
+                pads[pad] = buffer.get(offset + 1 + pad) != 0;
+        for (int control = 0; control < controls; control++)
+            normals[control] = buffer.getDouble(offset + valuesOffset + control * Double.BYTES);
+        return true;
+    }
+
+    private int offset(int slot) {
+        if (slot < 0 || slot >= slots)
+            throw new IllegalArgumentException("LaunchControl Error: there is no preset " + slot + ".");
+        return HEADER_LENGTH + slot * slotLength;
+    }
+
+    private int slotOf(PADS pad) {
+        PADS[] slotPads = this.slotPads;
+        for (int slot = 0; slot < slotPads.length; slot++)
+            if (slotPads[slot] == pad)
+                return slot;
+        return -1;
+    }
+
+    /**
+     * Turns on the light of the pad of the current preset, and off the lights of the other preset pads.
+     */
+    private void showCurrent() {
+        PADS[] slotPads = this.slotPads;
+        int current = this.current;
+        for (int slot = 0; slot < slotPads.length; slot++)
+            receiver.setLed(slotPads[slot], slot == current);
+    }
+
+    /**
+     * Saves the presets to the disk.
+     */
+    void close() {
+        buffer.force();
+    }
+
+    // ****** CALLED BY THE RECEIVER ****** //
+
+    /**
+     * @return True if the pad saves or recalls presets, in which case its messages are handled by {@link #padPressed(PADS, boolean)}.
+     */
+    boolean isPresetPad(PADS pad) {
+        return pad == savePad || slotOf(pad) >= 0;
+    }
+
+    void padPressed(PADS pad, boolean pressed) {
+        if (pad == savePad) {
+            saving = pressed;
+            receiver.setLed(pad, pressed);
+            return;
+        }
+        int slot = slotOf(pad);
+        if (!pressed || slot < 0)
+            return;
+        if (saving)
+            save(slot);
+        else
+            pendingRecall.set(slot);
+    }
+}
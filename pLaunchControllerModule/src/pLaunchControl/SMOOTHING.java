@@ -0,0 +1,29 @@
+package pLaunchControl;
+
+/**
+ * Ways of smoothing the value of a knob or slider, so that it moves continuously between
+ * the 128 positions of the physical control. See {@link Knob#smoothing(SMOOTHING, float)}.
+ */
+public enum SMOOTHING {
+
+    /**
+     * The smoothed value jumps to the value of the control. This is the default.
+     */
+    NONE,
+    /**
+     * The smoothed value moves towards the value of the control at a constant speed, covering
+     * the whole range of the control in the given time.
+     */
+    LINEAR,
+    /**
+     * The smoothed value covers a fixed fraction of the distance to the value of the control
+     * in every frame: about 63% of the distance in the given time. Fast at first, and slow at the end.
+     */
+    EXPONENTIAL,
+    /**
+     * The smoothed value follows the value of the control like a critically damped spring, accelerating
+     * and decelerating smoothly, without overshooting. Covers about 60% of the distance in the given time,
+     * like {@link #EXPONENTIAL}, but starts moving smoothly.
+     */
+    SPRING
+}
@@ -0,0 +1,17 @@
+package pLaunchControl;
+
+/**
+ * The clock of automation lanes, see {@link Automation#sync(SYNC)}.
+ */
+public enum SYNC {
+
+    /**
+     * Lanes are recorded and played back in frames, following `frameCount`, so that a recording plays
+     * the same number of frames, for instance when the sketch renders frames to files. This is the default.
+     */
+    FRAMES,
+    /**
+     * Lanes are recorded and played back in seconds, so that a recording keeps its duration whatever the frame rate.
+     */
+    TIME
+}
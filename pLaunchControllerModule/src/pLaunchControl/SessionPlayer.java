@@ -0,0 +1,105 @@
+package pLaunchControl;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.ShortMessage;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a file recorded by {@link SessionRecorder}, feeding each message to a receiver as if it
+ * came from the controller, either respecting the original timing or as fast as possible.
+ * The file is memory-mapped and a single {@link ShortMessage} is reused for every record,
+ * so replaying does not allocate.
+ * <p>Messages from the controller are ignored during the replay, see {@link LaunchControlDeviceReceiver#beginReplay()}.</p>
+ */
+final class SessionPlayer implements Runnable {
+
+    private final LaunchControlDeviceReceiver receiver;
+    private final MappedByteBuffer buffer;
+    private final long count;
+    private final boolean realTime;
+    private final ShortMessage message = new ShortMessage();
+
+    private volatile boolean running = true;
+    private Thread thread;
+
+    SessionPlayer(LaunchControlDeviceReceiver receiver, Path file, boolean realTime) throws IOException {
+        this.receiver = receiver;
+        this.realTime = realTime;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < SessionRecorder.HEADER_LENGTH)
+                throw new IOException("Not a recording of the controller: " + file);
+            // files written by SessionRecorder never hold more than MAX_RECORDS records
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(),
+                    SessionRecorder.HEADER_LENGTH + SessionRecorder.MAX_RECORDS * SessionRecorder.RECORD_LENGTH));
+        }
+        if (buffer.getInt(0) != SessionRecorder.MAGIC || buffer.getShort(4) != SessionRecorder.VERSION)
+            throw new IOException("Not a recording of the controller, or recorded with another version: " + file);
+        count = Math.min(buffer.getLong(8), (buffer.capacity() - SessionRecorder.HEADER_LENGTH) / SessionRecorder.RECORD_LENGTH);
+    }
+
+    long count() {
+        return count;
+    }
+
+    /**
+     * Replays the file in a new thread.
+     */
+    void start() {
+        thread = new Thread(this, "pLaunchControl replay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the replay, and waits for the message being replayed, so that a following replay
+     * does not feed the receiver at the same time.
+     */
+    void stop() {
+        running = false;
+        if (thread == null)
+            return;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Replays the file in the current thread.
+     */
+    @Override
+    public void run() {
+        receiver.beginReplay();
+        try {
+            play();
+        } finally {
+            receiver.endReplay();
+        }
+    }
+
+    private void play() {
+        long time = System.nanoTime();
+        for (long i = 0; i < count && running; i++) {
+            long record = buffer.getLong((int) (SessionRecorder.HEADER_LENGTH + i * SessionRecorder.RECORD_LENGTH));
+            if (realTime) {
+                time += record >>> 24;
+                long wait;
+                while (running && (wait = time - System.nanoTime()) > 0)
+                    LockSupport.parkNanos(this, wait);
+            }
+            try {
+                message.setMessage((int) (record >>> 16) & 0xFF, (int) (record >>> 8) & 0xFF, (int) record & 0xFF);
+            } catch (InvalidMidiDataException e) {
+                continue;
+            }
+            receiver.replay(message);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package pLaunchControl;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records the messages received from the controller into a binary file, to be replayed
+ * later with {@link SessionPlayer}.
+ * <p>The file starts with a header of {@value #HEADER_LENGTH} bytes: the magic number {@code PLCR},
+ * the format version and the number of records. Each record is a single big-endian long holding
+ * the time elapsed since the previous record, in nanoseconds, in its upper 40 bits, followed by
+ * the status, first and second data bytes of the message.</p>
+ * <p>The file is memory-mapped, and grown in chunks when full, so that recording a message is a
+ * single write to memory, without allocation. Messages are recorded by the thread receiving the messages of the
+ * controller, or by the thread of a {@link SessionPlayer} while a recording is replayed; recording is synchronized,
+ * so that the count and the mapping are handed over safely between them, and with {@link #close()}.
+ * A mapping is limited to 2 GB, so recording stops cleanly after {@value #MAX_RECORDS} messages.</p>
+ */
+final class SessionRecorder {
+
+    static final int MAGIC = 0x504C4352;
+    static final short VERSION = 1;
+    static final int HEADER_LENGTH = 16;
+    static final int RECORD_LENGTH = 8;
+    static final long MAX_DELTA = (1L << 40) - 1;
+
+    private static final int CHUNK_RECORDS = 1 << 20;
+
+    /**
+     * The largest number of records of a file, whose offsets must fit in a mapped buffer.
+     */
+    static final long MAX_RECORDS = (Integer.MAX_VALUE - HEADER_LENGTH) / RECORD_LENGTH;
+
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long mappedRecords;
+    private long count;
+    private long lastTime;
+    private boolean closed;
+
+    SessionRecorder(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        map(CHUNK_RECORDS);
+        buffer.putInt(0, MAGIC);
+        buffer.putShort(4, VERSION);
+        buffer.putLong(8, 0);
+        lastTime = System.nanoTime();
+    }
+
+    private void map(long records) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_LENGTH + records * RECORD_LENGTH);
+        mappedRecords = records;
+    }
+
+    /**
+     * Appends a message to the file.
+     */
+    synchronized void record(int status, int data1, int data2) {
+        if (closed)
+            return;
+        if (count == mappedRecords) {
+            if (count == MAX_RECORDS) {
+                System.err.println("LaunchControl Error: recording stopped, the file reached its largest size of " + MAX_RECORDS + " messages.");
+                close();
+                return;
+            }
+            try {
+                map(Math.min(mappedRecords + CHUNK_RECORDS, MAX_RECORDS));
+            } catch (IOException e) {
+                System.err.println("LaunchControl Error: recording stopped, the file could not be extended. Error message: " + e.getMessage());
+                close();
+                return;
+            }
+        }
+        long now = System.nanoTime();
+        long delta = Math.min(now - lastTime, MAX_DELTA);
+        lastTime = now;
+        buffer.putLong((int) (HEADER_LENGTH + count * RECORD_LENGTH),
+                delta << 24 | (status & 0xFF) << 16 | (data1 & 0xFF) << 8 | (data2 & 0xFF));
+        count++;
+    }
+
+    long count() {
+        return count;
+    }
+
+    /**
+     * Writes the number of records to the header, and truncates the file to its content.
+     */
+    synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+        buffer.putLong(8, count);
+        buffer.force();
+        buffer = null;
+        try {
+            channel.truncate(HEADER_LENGTH + count * RECORD_LENGTH);
+        } catch (IOException e) {
+            // some platforms do not allow truncating a mapped file; the header
+            // still holds the number of records, so the file remains valid
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("LaunchControl Error: the recording could not be saved. Error message: " + e.getMessage());
+        }
+    }
+}
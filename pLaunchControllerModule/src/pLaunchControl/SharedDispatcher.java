@@ -0,0 +1,103 @@
+package pLaunchControl;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Handles the messages of several controllers in a single thread. Each controller gets its own
+ * {@link EventQueue}, written by the thread delivering its MIDI messages, and the dispatch thread
+ * drains all queues in turn, so that events of all controllers are triggered from one thread,
+ * one at a time.
+ */
+final class SharedDispatcher implements Runnable {
+
+    private final Thread thread;
+    private final ShortMessage message = new ShortMessage();
+    private volatile Port[] ports = new Port[0];
+    private volatile boolean running = true;
+
+    SharedDispatcher() {
+        thread = new Thread(this, "pLaunchControl dispatch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @param receiver The receiver of a controller.
+     * @return The receiver to connect to the transmitter of the controller.
+     */
+    synchronized Receiver register(LaunchControlDeviceReceiver receiver) {
+        Port port = new Port(receiver);
+        Port[] result = Arrays.copyOf(ports, ports.length + 1);
+        result[ports.length] = port;
+        ports = result;
+        return port;
+    }
+
+    void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * @return The number of messages dropped because a controller sent them faster than they were handled.
+     */
+    long dropped() {
+        long dropped = 0;
+        for (Port port : ports)
+            dropped += port.queue.dropped();
+        return dropped;
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            boolean handled = false;
+            for (Port port : ports) {
+                int record;
+                while ((record = port.queue.poll()) >= 0) {
+                    handled = true;
+                    try {
+                        message.setMessage(record >>> 16, record >>> 8 & 0xFF, record & 0xFF);
+                    } catch (InvalidMidiDataException e) {
+                        continue;
+                    }
+                    port.receiver.receive(message, port.queue.lastTime());
+                }
+            }
+            if (!handled)
+                LockSupport.park(this);
+        }
+    }
+
+    private final class Port implements Receiver {
+
+        final LaunchControlDeviceReceiver receiver;
+        final EventQueue queue = new EventQueue(EventQueue.DEFAULT_CAPACITY);
+
+        Port(LaunchControlDeviceReceiver receiver) {
+            this.receiver = receiver;
+        }
+
+        @Override
+        public void send(MidiMessage message, long timeStamp) {
+            if (!(message instanceof ShortMessage)) {
+                // System Exclusive messages are not decoded, only printed in debug mode
+                receiver.send(message, timeStamp);
+                return;
+            }
+            ShortMessage shortMessage = (ShortMessage) message;
+            long arrival = receiver.stats == null ? 0 : System.nanoTime();
+            if (queue.offer(shortMessage.getStatus() << 16 | shortMessage.getData1() << 8 | shortMessage.getData2(), arrival))
+                LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
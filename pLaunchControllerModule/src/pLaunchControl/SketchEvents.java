@@ -0,0 +1,101 @@
+package pLaunchControl;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+/**
+ * Adapts the event methods declared in a sketch, such as {@code void LaunchControlKnobChanged(KNOBS knob)},
+ * to listeners. Each method is looked up once, and then invoked through a {@link MethodHandle} bound
+ * to the sketch, without boxing arguments.
+ */
+final class SketchEvents {
+
+    static final String CONTROLLER_CHANGED = "LaunchControlChanged";
+    static final String KNOB_CHANGED = "LaunchControlKnobChanged";
+    static final String SLIDER_CHANGED = "LaunchControlSliderChanged";
+    static final String PAD_CHANGED = "LaunchControlPadChanged";
+
+    private SketchEvents() {
+    }
+
+    /**
+     * @return A listener calling {@code void LaunchControlChanged()} in the sketch, or null if the sketch does not declare it.
+     */
+    static ControllerListener controllerListener(Object sketch) {
+        final MethodHandle handle = find(sketch, CONTROLLER_CHANGED, MethodType.methodType(void.class));
+        if (handle == null)
+            return null;
+        return () -> {
+            try {
+                handle.invokeExact();
+            } catch (Throwable e) {
+                report(CONTROLLER_CHANGED, e);
+            }
+        };
+    }
+
+    /**
+     * @return A listener calling {@code void LaunchControlKnobChanged(KNOBS knob)} in the sketch, or null if the sketch does not declare it.
+     */
+    static KnobListener knobListener(Object sketch) {
+        final MethodHandle handle = find(sketch, KNOB_CHANGED, MethodType.methodType(void.class, KNOBS.class));
+        if (handle == null)
+            return null;
+        return knob -> {
+            try {
+                handle.invokeExact(knob);
+            } catch (Throwable e) {
+                report(KNOB_CHANGED, e);
+            }
+        };
+    }
+
+    /**
+     * @return A listener calling {@code void LaunchControlSliderChanged(SLIDERS slider)} in the sketch, or null if the sketch does not declare it.
+     */
+    static SliderListener sliderListener(Object sketch) {
+        final MethodHandle handle = find(sketch, SLIDER_CHANGED, MethodType.methodType(void.class, SLIDERS.class));
+        if (handle == null)
+            return null;
+        return slider -> {
+            try {
+                handle.invokeExact(slider);
+            } catch (Throwable e) {
+                report(SLIDER_CHANGED, e);
+            }
+        };
+    }
+
+    /**
+     * @return A listener calling {@code void LaunchControlPadChanged(PADS pad)} in the sketch, or null if the sketch does not declare it.
+     */
+    static PadListener padListener(Object sketch) {
+        final MethodHandle handle = find(sketch, PAD_CHANGED, MethodType.methodType(void.class, PADS.class));
+        if (handle == null)
+            return null;
+        return pad -> {
+            try {
+                handle.invokeExact(pad);
+            } catch (Throwable e) {
+                report(PAD_CHANGED, e);
+            }
+        };
+    }
+
+    private static MethodHandle find(Object sketch, String name, MethodType type) {
+        try {
+            Method method = sketch.getClass().getMethod(name, type.parameterArray());
+            return MethodHandles.lookup().unreflect(method).bindTo(sketch).asType(type);
+        } catch (Exception e) {
+            // no such method, or an error, which is fine, just ignore
+            return null;
+        }
+    }
+
+    private static void report(String eventName, Throwable e) {
+        System.err.println("LaunchControl Error: an error occurred in " + eventName + "() of the sketch.");
+        e.printStackTrace();
+    }
+}
@@ -1,7 +1,5 @@
 package pLaunchControl;
 
-import java.lang.reflect.Field;
-
 
 /**
  * A logical representation of the physical slider on the MIDI controller.
@@ -13,27 +11,30 @@ import java.lang.reflect.Field;
  */
 public class Slider {
 
-    private float defaultValue = 0;
-    private float value;
-    private int slider_position;
-    private float min_value = 0;
-    private float max_value = 127;
-
-    private static final float MAX_POSITION = 127f;
-
     public SLIDERS controllerSlider;
     private Object parent_object;
 
-    private boolean hasDefault = false;
+    private final ControlState state;
+    private final int index;
 
     protected Slider(int sliderCode, float minValue, float maxValue) {
-        controllerSlider = SLIDERS.values()[sliderCode];
+        this(sliderCode, null, ControlState.detached(), 0);
         range(minValue, maxValue);
     }
 
     protected Slider(int sliderCode, Object parent) {
+        this(sliderCode, parent, ControlState.detached(), 0);
+    }
+
+    /**
+     * @param state The state of the controls of the device.
+     * @param index The index of the slider in the state.
+     */
+    Slider(int sliderCode, Object parent, ControlState state, int index) {
         controllerSlider = SLIDERS.values()[sliderCode];
         parent_object = parent;
+        this.state = state;
+        this.index = index;
     }
 
 
@@ -44,14 +45,10 @@ public class Slider {
      * @return The Slider itself.
      */
     public Slider defaultValue(float defaultValue) {
-        this.defaultValue = defaultValue;
-
-        //approximate the position
-        this.slider_position = Math.round(MAX_POSITION * (defaultValue - min_value) / (max_value - min_value));
-
-        this.hasDefault = true;
-        if (variable != null)
-            setFloatField(parent_object, variable, defaultValue);
+        state.setDefault(index, defaultValue);
+        FieldBinding binding = state.binding(index);
+        if (binding != null)
+            binding.setFloat(defaultValue);
         return this;
     }
 
@@ -62,7 +59,7 @@ public class Slider {
      * @return The Slider itself.
      */
     public Slider minValue(float minValue) {
-        this.min_value = minValue;
+        state.setRange(index, minValue, state.max[index]);
         return this;
     }
 
@@ -73,7 +70,7 @@ public class Slider {
      * @return The Slider itself.
      */
     public Slider maxValue(float maxValue) {
-        this.max_value = maxValue;
+        state.setRange(index, state.min[index], maxValue);
         return this;
     }
 
@@ -88,22 +85,43 @@ public class Slider {
      * @return The Slider itself.
      */
     public Slider range(float minValue, float maxValue) {
-        this.min_value = minValue;
-        this.max_value = maxValue;
+        state.setRange(index, minValue, maxValue);
+        return this;
+    }
+
+    /**
+     * Sets how the position of the slider maps to its value, for instance {@link CURVE#EXPONENTIAL} for a frequency.
+     * The curve is computed once for each position of the slider, when the curve or the range is set, so that
+     * moving the slider costs the same with any curve. The value follows the new curve when the slider is next moved.
+     * @param curve The curve, {@link CURVE#LINEAR} by default.
+     * @return The Slider itself.
+     */
+    public Slider curve(CURVE curve) {
+        if (curve == CURVE.SPLINE)
+            throw new IllegalArgumentException("LaunchControl Error: the points of a spline must be given with curve(float...).");
+        state.setCurve(index, curve, null);
+        return this;
+    }
+
+    /**
+     * Maps the position of the slider to its value with a smooth curve through the given points, see {@link #curve(CURVE)}.
+     * @param points The values at evenly spaced positions of the slider, from its minimum to its maximum position,
+     *               normalized between 0, the minimum of the range, and 1, its maximum. At least 2 points.
+     * @return The Slider itself.
+     */
+    public Slider curve(float... points) {
+        state.setCurve(index, CURVE.SPLINE, points);
         return this;
     }
 
 
     /***
-     * Sets the stored value of the slider position. If slider has a default value set
-     * with `defaultValue(float value)`, this method will only update the stored value
-     * after the real slider has "passed over" the default value.
-     *
-     * @param value
+     * Updates the attached variable after the value of the slider changed.
      */
-    private void value(float value) {
-        this.value = value;
-        setFloatField(parent_object, variable, this.value);
+    private void changed() {
+        FieldBinding binding = state.binding(index);
+        if (binding != null)
+            binding.setFloat(value());
     }
 
 
@@ -115,10 +133,7 @@ public class Slider {
      * for value to be updated in the logical Slider object.
      */
     public float value() {
-        if (hasDefault)
-            return this.defaultValue;
-        return value;
-
+        return state.value[index];
     }
 
     /**
@@ -129,54 +144,93 @@ public class Slider {
      * for value to be updated in the logical Slider object.
      */
     public float valueNormal() {
-        float input = 0;
-        if (hasDefault)
-            input = this.defaultValue;
-        else
-            input = value;
-        //if (input > 0) System.out.println("slider: " + slider_position + ", valueNormal: " + input);
-        // else System.out.println("slider: " + slider_position + " no value");
-        return (input - min_value) / (max_value - min_value);
-
+        return state.valueNormal(index);
     }
 
-    private Field getField(Object parent, String fieldName) {
-        if (fieldName == null)
-            return null;
-        try {
-            return parent.getClass().getDeclaredField(fieldName);
-        } catch (Exception e) {
-            throw new IllegalArgumentException("LaunchControl Error: variable not found in the sketch: " + fieldName + ".");
-        }
-
+    /**
+     * Sets what happens when the slider is moved while its value does not match its position, for instance
+     * after {@link #defaultValue(float)}. By default, the value does not change until the slider reaches it.
+     * @param takeover How the slider takes the value over.
+     * @return The Slider itself.
+     */
+    public Slider takeover(TAKEOVER takeover) {
+        state.setTakeover(index, takeover);
+        return this;
     }
 
+    /**
+     * Reads the slider with 14-bit resolution, from a user template sending its position as two control changes:
+     * the most significant 7 bits on the controller of the slider, followed by the least significant 7 bits on
+     * a second controller, usually the controller of the slider plus 32. {@link #value()}, {@link #valueFine()}
+     * and the attached variable then take 16384 steps, while {@link #position()} keeps the 128 coarse steps.
+     * @param lsbController The controller number sending the least significant bits, not used by any other control.
+     * @return The Slider itself.
+     */
+    public Slider highResolution(int lsbController) {
+        if (state.resolution != null)
+            state.setResolution(index, HighResolution.PAIRED, lsbController);
+        return this;
+    }
 
-    private void setFloatField(Object parent, String fieldName, float value) {
+    /**
+     * Estimates the position of the slider between its 128 steps, for factory templates sending 7-bit positions,
+     * from the speed at which the slider moves. The estimate is read with {@link #valueFine()}, and is updated
+     * once per frame; {@link #value()} and the attached variable keep the 128 steps of the slider.
+     * @param estimate True to estimate the position, false to return to the standard resolution.
+     * @return The Slider itself.
+     */
+    public Slider highResolution(boolean estimate) {
+        if (state.resolution != null)
+            state.setResolution(index, estimate ? HighResolution.ESTIMATED : HighResolution.OFF, 0);
+        return this;
+    }
 
-        Field field = getField(parent,fieldName);
-        if (field == null)
-            return;
+    /**
+     * @return The value of the slider in double precision, according to its defined range, with the resolution
+     * set with {@link #highResolution(int)} or {@link #highResolution(boolean)}.
+     */
+    public double valueFine() {
+        return state.valueFine(index);
+    }
 
-        field.setAccessible(true);
-        try {
-            field.setFloat(parent, value);
-        }
-        catch (IllegalAccessException e) {
-            System.err.printf("LaunchControl Error: It was not possible to set the value of the variable %s. Error message: %s%n", fieldName, e.getMessage());
-        }
+    /**
+     * Smooths the value of the slider, so that it moves continuously between the positions of the physical slider,
+     * instead of jumping. The smoothed value is read with {@link #valueSmoothed()}, and is updated once per frame;
+     * {@link #value()} and the attached variable still follow the slider without delay.
+     * @param smoothing How the smoothed value moves towards the value of the slider.
+     * @param seconds The time taken by the smoothed value to reach the value of the slider, see {@link SMOOTHING}.
+     * @return The Slider itself.
+     */
+    public Slider smoothing(SMOOTHING smoothing, float seconds) {
+        if (state.smoothing != null)
+            state.smoothing.configure(index, smoothing, seconds, state.valueNormal(index));
+        return this;
+    }
 
+    /**
+     * @return The value of the slider, smoothed as set with {@link #smoothing(SMOOTHING, float)},
+     * or {@link #value()} when the slider is not smoothed. Smoothed values are advanced by the animation thread,
+     * and are meant to be read from it, in {@code draw()}.
+     */
+    public float valueSmoothed() {
+        if (state.smoothing == null || !state.smoothing.smoothed(index))
+            return value();
+        return state.min[index] + state.smoothing.current(index) * (state.max[index] - state.min[index]);
     }
 
     /**
-     * Attaches the slider value to a variable. The variable name must match a float variable
-     * in your sketch. Currently
-     * @param variable
-     * @return
+     * Attaches the slider value to a variable. The variable must be a float, double, int, long, short or byte
+     * variable in your sketch, or a path to one, such as {@code position.x}, {@code sizes[3]}
+     * or {@code shape.setRadius}. Integer variables take the closest integer.
+     * @param variable The path of the variable, or null to detach the slider.
+     * @return The current instance of Slider.
      */
     public Slider variable(String variable) {
+        FieldBinding binding = FieldBinding.forFloat(parent_object, variable);
+        state.bind(index, binding);
         this.variable = variable;
-        setFloatField(parent_object, variable, value());
+        if (binding != null)
+            binding.setFloat(value());
         return this;
     }
 
@@ -187,6 +241,7 @@ public class Slider {
 
     public Slider plugTo(Object parent_object) {
         this.parent_object = parent_object;
+        state.bind(index, FieldBinding.forFloat(parent_object, variable));
         return this;
     }
 
@@ -196,17 +251,71 @@ public class Slider {
     protected String variable;
 
 
+    /***
+     * Sets the stored value of the slider position. If slider has a default value set
+     * with `defaultValue(float value)`, this method will only update the stored value
+     * after the real slider has "passed over" the default value.
+     *
+     * @param position The position of the slider, between 0 and 127.
+     * @return The Slider itself.
+     */
     public Slider position(int position) {
-        if (hasDefault && this.slider_position != position)
-            return this;
-
-        this.hasDefault = false;
-        this.slider_position = position;
-        this.value(min_value + slider_position / MAX_POSITION * (max_value - min_value));
+        move(position);
         return this;
     }
 
+    /**
+     * Sets the position of the slider, see {@link #position(int)}.
+     * @return True if the value of the slider changed.
+     */
+    boolean move(int position) {
+        return move(position, 0);
+    }
+
+    /**
+     * Sets the position of the slider, moved by a message of the controller.
+     * @param arrival The {@link System#nanoTime()} of the arrival of the message, or 0 if unknown.
+     * @return True if the value of the slider changed.
+     */
+    boolean move(int position, long arrival) {
+        if (!state.setPosition(index, position, arrival))
+            return false;
+        changed();
+        return true;
+    }
+
+    /**
+     * Sets the 14-bit position of the slider, in paired high-resolution mode.
+     * @return True if the slider moved.
+     */
+    boolean positionFine(int fine) {
+        if (!state.setFine(index, fine))
+            return false;
+        changed();
+        return true;
+    }
+
+    /**
+     * Sets the value of the slider played back by an {@link Automation} lane.
+     * @param normal The value, normalized between 0 and 1.
+     * @return True if the value of the slider changed.
+     */
+    boolean automate(double normal) {
+        if (!state.setAutomated(index, normal))
+            return false;
+        changed();
+        return true;
+    }
+
+    /**
+     * Updates the attached variable after the value or the settings of the slider were changed
+     * at once with other controls, by a {@link PresetBank} or a {@link ControlMapping}.
+     */
+    void refresh() {
+        changed();
+    }
+
     public int position() {
-        return this.slider_position;
+        return state.position[index];
     }
 }
@@ -0,0 +1,14 @@
+package pLaunchControl;
+
+/**
+ * Receives notifications when a slider changes position.
+ * Register a listener with {@link MidiController#addSliderListener(SliderListener)}.
+ */
+public interface SliderListener {
+
+    /**
+     * Called when a slider has changed.
+     * @param slider The slider that was changed.
+     */
+    void sliderChanged(SLIDERS slider);
+}
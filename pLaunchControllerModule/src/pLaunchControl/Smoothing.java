@@ -0,0 +1,123 @@
+package pLaunchControl;
+
+/**
+ * Smooths the values of all knobs and sliders of a device, advanced once per frame.
+ * The state of every control is kept in primitive arrays indexed by control, and a frame is
+ * a single pass over the arrays, so advancing and reading smoothed values do not allocate.
+ * Values are normalized between 0 and 1, so that the smoothing does not depend on the range of the control.
+ * <p>The arrays are only used by the animation thread: the targets are read from the {@link ControlState} at each
+ * frame, under its sequence lock, see {@link ControlState#smooth(long)}, instead of being written by the thread
+ * receiving the messages, and the smoothing is configured by the sketch or by a {@link ControlMapping}.</p>
+ */
+final class Smoothing {
+
+    // ordinals of SMOOTHING, as constants for the switch of advance()
+    private static final byte NONE = 0;
+    private static final byte LINEAR = 1;
+    private static final byte EXPONENTIAL = 2;
+    private static final byte SPRING = 3;
+
+    /**
+     * The longest frame taken into account, in seconds, so that the values do not jump
+     * after the sketch was paused.
+     */
+    private static final float MAX_FRAME = 0.1f;
+
+    private final float[] target;
+    private final float[] current;
+    private final float[] velocity;
+    private final float[] time;
+    private final byte[] mode;
+
+    private long lastFrame;
+
+    Smoothing(int controls) {
+        target = new float[controls];
+        current = new float[controls];
+        velocity = new float[controls];
+        time = new float[controls];
+        mode = new byte[controls];
+    }
+
+    /**
+     * @param seconds The time of the smoothing, see {@link SMOOTHING}.
+     * @param value The current normalized value of the control, from which the smoothed value starts.
+     */
+    void configure(int control, SMOOTHING smoothing, float seconds, float value) {
+        if (seconds <= 0 && smoothing != SMOOTHING.NONE)
+            throw new IllegalArgumentException("LaunchControl Error: the smoothing time must be greater than 0.");
+        time[control] = seconds;
+        mode[control] = (byte) smoothing.ordinal();
+        target[control] = value;
+        current[control] = value;
+        velocity[control] = 0;
+    }
+
+    SMOOTHING mode(int control) {
+        return SMOOTHING.values()[mode[control]];
+    }
+
+    /**
+     * @return False if the control is not smoothed, and its smoothed value is its value.
+     */
+    boolean smoothed(int control) {
+        return mode[control] != NONE;
+    }
+
+    /**
+     * Sets the normalized value the control is moving towards.
+     */
+    void target(int control, float value) {
+        target[control] = value;
+        if (mode[control] == NONE)
+            current[control] = value;
+    }
+
+    /**
+     * @return The smoothed normalized value of the control.
+     */
+    float current(int control) {
+        return current[control];
+    }
+
+    /**
+     * Advances all controls by the time elapsed since the previous frame.
+     */
+    void advance(long now) {
+        float dt = lastFrame == 0 ? 0 : Math.min((now - lastFrame) / 1e9f, MAX_FRAME);
+        lastFrame = now;
+        advance(dt);
+    }
+
+    void advance(float dt) {
+        for (int i = 0; i < current.length; i++) {
+            float x = current[i];
+            float goal = target[i];
+            switch (mode[i]) {
+                case LINEAR: {
+                    float step = dt / time[i];
+                    float distance = goal - x;
+                    current[i] = Math.abs(distance) <= step ? goal : x + Math.copySign(step, distance);
+                    break;
+                }
+                case EXPONENTIAL:
+                    current[i] = goal + (x - goal) * (float) Math.exp(-dt / time[i]);
+                    break;
+                case SPRING: {
+                    // critically damped spring, integrated with an approximation of exp(-omega * dt)
+                    // that is stable for any frame length
+                    float omega = 2f / time[i];
+                    float o = omega * dt;
+                    float decay = 1f / (1f + o + 0.48f * o * o + 0.235f * o * o * o);
+                    float change = x - goal;
+                    float temp = (velocity[i] + omega * change) * dt;
+                    velocity[i] = (velocity[i] - omega * temp) * decay;
+                    current[i] = goal + (change + temp) * decay;
+                    break;
+                }
+                default:
+                    current[i] = goal;
+            }
+        }
+    }
+}
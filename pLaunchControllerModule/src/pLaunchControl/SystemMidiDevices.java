@@ -0,0 +1,35 @@
+package pLaunchControl;
+
+import uk.co.xfactorylibrarians.coremidi4j.CoreMidiDeviceProvider;
+
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.spi.MidiDeviceProvider;
+
+/**
+ * The MIDI devices connected to the computer, listed by CoreMidi4J so that devices are also
+ * found on macOS, where the Java Sound implementation does not support System Exclusive messages.
+ * This is the provider used by the controllers unless another one is given.
+ */
+final class SystemMidiDevices extends MidiDeviceProvider {
+
+    static final SystemMidiDevices INSTANCE = new SystemMidiDevices();
+
+    private SystemMidiDevices() {
+    }
+
+    @Override
+    public MidiDevice.Info[] getDeviceInfo() {
+        return CoreMidiDeviceProvider.getMidiDeviceInfo();
+    }
+
+    @Override
+    public MidiDevice getDevice(MidiDevice.Info info) {
+        try {
+            return MidiSystem.getMidiDevice(info);
+        } catch (MidiUnavailableException e) {
+            throw new IllegalArgumentException("MIDI device not available: " + info, e);
+        }
+    }
+}
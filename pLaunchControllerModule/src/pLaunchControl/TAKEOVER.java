@@ -0,0 +1,22 @@
+package pLaunchControl;
+
+/**
+ * What happens when a knob or slider is moved while its value does not match its physical position,
+ * for instance after {@link Knob#defaultValue(float)}. See {@link Knob#takeover(TAKEOVER)}.
+ */
+public enum TAKEOVER {
+
+    /**
+     * The value jumps to the position of the control as soon as it is moved.
+     */
+    JUMP,
+    /**
+     * The value does not change until the control reaches or passes over the value. This is the default.
+     */
+    PICKUP,
+    /**
+     * The value moves in the direction of the control, by a fraction of the movement, so that the value
+     * and the control meet at the end of the range. The value never jumps, and follows the control once they meet.
+     */
+    SCALE
+}